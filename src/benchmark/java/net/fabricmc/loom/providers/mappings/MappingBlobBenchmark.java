@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.collect.Iterables;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
+import net.fabricmc.loom.providers.mappings.TinyReader.Target;
+
+/**
+ * Compares how much memory and time it takes to load a set of tiny mappings into a normal {@link MappingBlob} against a {@link MappingBlob#compact()} one.
+ *
+ * <p>Run with {@code gradlew benchmarkMappings -Pmappings=<tiny file or mappings jar> [-Pfrom=intermediary] [-Pto=named]}
+ */
+public class MappingBlobBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) throw new IllegalArgumentException("Usage: <mappings> [from] [to]");
+		Path mappings = Paths.get(args[0]);
+		String from = args.length > 1 ? args[1] : "intermediary";
+		String to = args.length > 2 ? args[2] : "named";
+
+		if (mappings.getFileName().toString().endsWith(".jar")) {
+			try (FileSystem fs = FileSystems.newFileSystem(mappings, (ClassLoader) null)) {
+				Path tiny = Files.createTempFile("benchmark", ".tiny");
+
+				try {
+					Files.copy(fs.getPath("mappings/mappings.tiny"), tiny, StandardCopyOption.REPLACE_EXISTING);
+					run(tiny, from, to);
+				} finally {
+					Files.delete(tiny);
+				}
+			}
+		} else {
+			run(mappings, from, to);
+		}
+	}
+
+	private static void run(Path tiny, String from, String to) throws IOException {
+		//Warm up the reader so neither side pays for class loading and JIT compilation
+		load(tiny, from, to, MappingBlob::new);
+		load(tiny, from, to, MappingBlob::compact);
+
+		for (int round = 1; round <= ROUNDS; round++) {
+			System.out.println("Round " + round + ':');
+			measure("Normal", tiny, from, to, MappingBlob::new);
+			measure("Compact", tiny, from, to, MappingBlob::compact);
+		}
+	}
+
+	private static MappingBlob load(Path tiny, String from, String to, Supplier<MappingBlob> blobMaker) throws IOException {
+		MappingBlob blob = blobMaker.get();
+		TinyReader.readTiny(tiny, Target.names(from, to, blob), Target.comments(from, blob));
+		return blob;
+	}
+
+	private static void measure(String name, Path tiny, String from, String to, Supplier<MappingBlob> blobMaker) throws IOException {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+		long before = usedHeap(memory);
+		long start = System.nanoTime();
+		MappingBlob blob = load(tiny, from, to, blobMaker);
+		long time = System.nanoTime() - start;
+		long after = usedHeap(memory);
+
+		int classes = 0, members = 0;
+		for (Mapping mapping : blob) {//Also keeps the blob alive until after the heap has been measured
+			classes++;
+			members += Iterables.size(mapping.methods()) + Iterables.size(mapping.fields());
+		}
+
+		System.out.printf("\t%-8s %,8d KB retained, %,6d ms to load %,d classes and %,d members%n", name, (after - before) / 1024, TimeUnit.NANOSECONDS.toMillis(time), classes, members);
+	}
+
+	private static long usedHeap(MemoryMXBean memory) {
+		for (int i = 0; i < 3; i++) {
+			memory.gc();
+		}
+
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -75,6 +76,7 @@ import net.fabricmc.loom.providers.MappedModsCollectors;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.providers.StackedMappingsProvider;
+import net.fabricmc.loom.providers.mappings.MappingsLookup;
 import net.fabricmc.loom.providers.mappings.TinyWriter;
 import net.fabricmc.loom.task.RemapJarTask;
 import net.fabricmc.loom.task.RemapSourcesJarTask;
@@ -253,44 +255,32 @@ public class AbstractPlugin implements Plugin<Project> {
 						//If there are any class members, the signatures might include Minecraft types which need stating explicitly
 						//It could be missed but then they wouldn't get remapped which is not very useful
 						if (!extraMappings.getMethods().isEmpty() || !extraMappings.getFields().isEmpty()) {
-							Map<String, String> classes;
+							MappingsLookup classes;
 							try {
-								classes = extension.getMappingsProvider().getMappings().getClassEntries().stream()
-																.collect(Collectors.toMap(entry -> entry.get(from), entry -> entry.get(to)));
+								classes = MappingsLookup.of(extension.getMappingsProvider().getMappings());
 							} catch (IOException e) {
 								throw new UncheckedIOException("Error getting complete mappings", e);
 							}
 
 							Map<String, String> extraClasses = new HashMap<>();
+							Consumer<String> classAdder = name -> {
+								String mapped = classes.mapClass(name, from, to);
+								if (mapped != null) extraClasses.put(name, mapped);
+							};
 
 							for (EntryTriple member : extraMappings.getMethods().keySet()) {
-								if (classes.containsKey(member.getOwner())) {
-									extraClasses.put(member.getOwner(), classes.get(member.getOwner()));
-								}
+								classAdder.accept(member.getOwner());
 
 								for (Type argument : Type.getArgumentTypes(member.getDesc())) {
-									String argumentType = argument.getInternalName();
-
-									if (classes.containsKey(argumentType)) {
-										extraClasses.put(argumentType, classes.get(argumentType));
-									}
+									classAdder.accept(argument.getInternalName());
 								}
 
-								String returnType = Type.getReturnType(member.getDesc()).getInternalName();
-								if (classes.containsKey(returnType)) {
-									extraClasses.put(returnType, classes.get(returnType));
-								}
+								classAdder.accept(Type.getReturnType(member.getDesc()).getInternalName());
 							}
 
 							for (EntryTriple member : extraMappings.getFields().keySet()) {
-								if (classes.containsKey(member.getOwner())) {
-									extraClasses.put(member.getOwner(), classes.get(member.getOwner()));
-								}
-
-								String returnType = Type.getType(member.getDesc()).getInternalName();
-								if (classes.containsKey(returnType)) {
-									extraClasses.put(returnType, classes.get(returnType));
-								}
+								classAdder.accept(member.getOwner());
+								classAdder.accept(Type.getType(member.getDesc()).getInternalName());
 							}
 
 							for (Entry<String, String> entry : extraClasses.entrySet()) {
@@ -416,6 +406,7 @@ public class AbstractPlugin implements Plugin<Project> {
 		project.getGradle().buildFinished(result -> {
 			try {//Try avoid daemons causing caching problems
 				if (extension.hasMinecraftProvider()) extension.getMinecraftProvider().clearCache();
+				extension.getChecksumCache().save();
 			} catch (Throwable t) {
 				project.getLogger().warn("Error cleaning up after evaluation", t);
 			}
@@ -73,6 +73,9 @@ import net.fabricmc.loom.providers.MinecraftLibraryProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.task.GenerateSourcesTask;
+import net.fabricmc.loom.util.ChecksumCache;
+import net.fabricmc.loom.util.ClasspathSkeletons;
+import net.fabricmc.loom.util.DerivedJarStore;
 import net.fabricmc.loom.util.GradleSupport;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper.LocalNameSuggestor;
 import net.fabricmc.stitch.commands.CommandProposeFieldNames.NameAcceptor;
@@ -265,6 +268,18 @@ public class LoomGradleExtension {
 		return nestedModCache;
 	}
 
+	public ChecksumCache getChecksumCache() {
+		return ChecksumCache.of(new File(getUserCache(), "checksums.bin").toPath());
+	}
+
+	public ClasspathSkeletons getClasspathSkeletons() {
+		return new ClasspathSkeletons(new File(getUserCache(), "classpath_skeletons").toPath(), getChecksumCache());
+	}
+
+	public DerivedJarStore getDerivedJarStore() {
+		return new DerivedJarStore(new File(getUserCache(), "derived_jars").toPath());
+	}
+
 	public File getNativesJarStore() {
 		File natives = new File(getUserCache(), "natives/jars");
 
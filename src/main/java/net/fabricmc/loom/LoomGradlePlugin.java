@@ -39,6 +39,7 @@ import net.fabricmc.loom.decompilers.fernflower.ForgeFlowerDecompiler;
 import net.fabricmc.loom.providers.MinecraftLibraryProvider;
 import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.task.CleanLoomBinaries;
+import net.fabricmc.loom.task.CleanLoomDerivedJars;
 import net.fabricmc.loom.task.CleanLoomMappings;
 import net.fabricmc.loom.task.DownloadAssetsTask;
 import net.fabricmc.loom.task.GenEclipseRunsTask;
@@ -74,10 +75,12 @@ public class LoomGradlePlugin extends AbstractPlugin {
 
 		tasks.register("cleanLoomBinaries", CleanLoomBinaries.class);
 		tasks.register("cleanLoomMappings", CleanLoomMappings.class);
+		tasks.register("cleanLoomDerivedJars", CleanLoomDerivedJars.class);
 
 		tasks.register("cleanLoom").configure(task -> {
 			task.dependsOn(tasks.getByName("cleanLoomBinaries"));
 			task.dependsOn(tasks.getByName("cleanLoomMappings"));
+			task.dependsOn(tasks.getByName("cleanLoomDerivedJars"));
 		});
 
 		tasks.register("migrateMappings", MigrateMappingsTask.class, t -> {
@@ -24,7 +24,10 @@
 package net.fabricmc.loom.dependencies;
 
 import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +44,7 @@ import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ModuleDependency;
 import org.gradle.api.artifacts.SelfResolvingDependency;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.artifacts.query.ArtifactResolutionQuery;
@@ -49,13 +53,14 @@ import org.gradle.api.artifacts.result.ComponentArtifactsResult;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
 import org.gradle.jvm.JvmLibrary;
 import org.gradle.language.base.artifact.SourcesArtifact;
-import org.zeroturnaround.zip.ZipUtil;
 
 import com.google.common.collect.Iterables;
 import com.google.common.collect.ImmutableMap.Builder;
-import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import net.fabricmc.loom.util.JarMetadata;
+
 public class ArtifactInfo {
 	/**
 	 * Process the artifacts for the given configuration into {@link ArtifactInfo}s
@@ -92,6 +97,7 @@ public class ArtifactInfo {
 	public final File artifact;
 	protected final DependencyHandler depHandler;
 	private ModuleComponentIdentifier identifier;
+	private Optional<File> sources;
 
 	public ArtifactInfo(ModuleComponentIdentifier identifier, String classifier, File artifact, DependencyHandler depHandler) {
 		this(identifier.getGroup(), identifier.getModule(), identifier.getVersion(), classifier, artifact, depHandler);
@@ -117,7 +123,15 @@ public class ArtifactInfo {
 	}
 
 	public static boolean isFabricMod(File file) {
-		return "jar".equals(FilenameUtils.getExtension(file.getName())) && ZipUtil.containsEntry(file, "fabric.mod.json");
+		return "jar".equals(FilenameUtils.getExtension(file.getName())) && getMetadata(file).isFabricMod();
+	}
+
+	private static JarMetadata getMetadata(File file) {
+		try {
+			return JarMetadata.of(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + file, e);
+		}
 	}
 
 	public boolean isFabricMod() {
@@ -133,18 +147,49 @@ public class ArtifactInfo {
 	}
 
 	public Optional<File> getSources() {
+		if (sources == null) resolveSources(Collections.singleton(this));
+
+		return sources;
+	}
+
+	/**
+	 * Find the sources for all the given artifacts at once, so {@link #getSources()} doesn't have to go through Gradle's resolution for each in turn
+	 *
+	 * @param artifacts The artifacts to find sources for, any which already know their sources (or aren't modules) are skipped
+	 */
+	public static void resolveSources(Collection<ArtifactInfo> artifacts) {
+		Map<ComponentIdentifier, List<ArtifactInfo>> pending = artifacts.stream().filter(artifact -> artifact.identifier != null && artifact.sources == null)
+				.collect(Collectors.groupingBy(artifact -> artifact.identifier));
+		if (pending.isEmpty()) return;
+
+		DependencyHandler depHandler = pending.values().iterator().next().get(0).depHandler;
 		@SuppressWarnings("unchecked") //Following what IdeDependencyResult#resolveAuxiliaryArtifacts does
-		ArtifactResolutionQuery query = depHandler.createArtifactResolutionQuery().forComponents(identifier).withArtifacts(JvmLibrary.class, SourcesArtifact.class);
+		ArtifactResolutionQuery query = depHandler.createArtifactResolutionQuery().forComponents(pending.keySet()).withArtifacts(JvmLibrary.class, SourcesArtifact.class);
 
 		for (ComponentArtifactsResult result : query.execute().getResolvedComponents()) {
+			Optional<File> sources = Optional.empty();
+
 			for (ArtifactResult srcArtifact : result.getArtifacts(SourcesArtifact.class)) {
 				if (srcArtifact instanceof ResolvedArtifactResult) {
-					return Optional.of(((ResolvedArtifactResult) srcArtifact).getFile());
+					sources = Optional.of(((ResolvedArtifactResult) srcArtifact).getFile());
+					break;
+				}
+			}
+
+			List<ArtifactInfo> resolved = pending.remove(result.getId());
+			if (resolved != null) {
+				for (ArtifactInfo artifact : resolved) {
+					artifact.sources = sources;
 				}
 			}
 		}
 
-		return Optional.empty();
+		//Anything which didn't resolve doesn't have any sources to find
+		for (List<ArtifactInfo> unresolved : pending.values()) {
+			for (ArtifactInfo artifact : unresolved) {
+				artifact.sources = Optional.empty();
+			}
+		}
 	}
 
 	@Override
@@ -202,8 +247,9 @@ public class ArtifactInfo {
 			File root = classifierToFile.get(""); //We've built the classifierToFile map, now to try find a name and version for our dependency
 			if (isFabricMod = isFabricMod(root)) {
 				//It's a Fabric mod, see how much we can extract out
-				JsonObject json = new Gson().fromJson(new String(ZipUtil.unpackEntry(root, "fabric.mod.json"), StandardCharsets.UTF_8), JsonObject.class);
-				if (json == null || !json.has("id") || !json.has("version")) throw new IllegalArgumentException("Invalid Fabric mod jar: " + root + " (malformed json: " + json + ')');
+				JsonElement element = getMetadata(root).getModJson();
+				JsonObject json = element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+				if (json == null || !json.has("id") || !json.has("version")) throw new IllegalArgumentException("Invalid Fabric mod jar: " + root + " (malformed json: " + element + ')');
 
 				if (json.has("name")) {//Go for the name field if it's got one
 					name = json.get("name").getAsString();
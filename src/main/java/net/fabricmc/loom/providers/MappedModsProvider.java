@@ -7,34 +7,49 @@
  */
 package net.fabricmc.loom.providers;
 
-import java.io.Closeable;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
-import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonElement;
 
-import org.zeroturnaround.zip.ZipUtil;
+import org.apache.commons.io.IOUtils;
 
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
@@ -42,18 +57,28 @@ import org.gradle.api.logging.Logger;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.dependencies.DependencyProvider;
 import net.fabricmc.loom.dependencies.LogicalDependencyProvider;
+import net.fabricmc.loom.providers.openfine.Openfine;
 import net.fabricmc.loom.util.AccessTransformerHelper;
+import net.fabricmc.loom.util.ChecksumCache;
+import net.fabricmc.loom.util.ClasspathSkeletons;
 import net.fabricmc.loom.util.Closer;
+import net.fabricmc.loom.util.DerivedJarStore;
+import net.fabricmc.loom.util.JarMetadata;
 import net.fabricmc.loom.util.SourceRemapper;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.InputTag;
-import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 
 public class MappedModsProvider extends LogicalDependencyProvider {
 	static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+	/** The name remapped mods are held under in the {@link DerivedJarStore} */
+	static final String STORED_NAME = "mod.jar";
+	/** How many remapped mods can be written out at once, can be set with {@code -Dfabric.loom.modWriteThreads=<count>} */
+	private static final int WRITE_THREADS = Integer.getInteger("fabric.loom.modWriteThreads", Runtime.getRuntime().availableProcessors());
 	private final Set<File> extraClasspath = new HashSet<>();
+	/** The SHA-1 of every mod which will be on the classpath whilst remapping */
+	private Set<String> classpathMods = Collections.emptySet();
 	private final Multimap<File, File> sourced = HashMultimap.create();
 	private final Multimap<File, File> unsourced = HashMultimap.create();
 	private final Multimap<File, File> sources = HashMultimap.create();
@@ -82,6 +107,35 @@ public class MappedModsProvider extends LogicalDependencyProvider {
 		sources.put(input, output);
 	}
 
+	void setClasspathMods(Set<String> classpathMods) {
+		this.classpathMods = classpathMods;
+	}
+
+	/**
+	 * Make the key a remapped copy of the given mod is held in the {@link DerivedJarStore} with, from everything which changes what ends up in it,
+	 * including the SHA-1s of all the mods on the classpath with it. Returns {@code null} if the mod can't be shared as invalid locals would be renamed
+	 * by the project's own local name suggestors.
+	 */
+	String makeStoreKey(LoomGradleExtension extension, File input, boolean hasSources) throws IOException {
+		if (!hasSources && !extension.getLocalSuggestors().isEmpty()) return null;
+
+		MappingsProvider mappingsProvider = getProvider(MappingsProvider.class);
+		ChecksumCache checksums = extension.getChecksumCache();
+
+		DerivedJarStore.Key key = new DerivedJarStore.Key().put("remapped-mod").put(checksums.sha1(input)).put(mappingsProvider.minecraftVersion)
+				.put(checksums.sha1(mappingsProvider.MAPPINGS_TINY)).put(extension.shouldBulldozeMappings()).put(!hasSources) //Whether invalid locals are renamed
+				.put(extension.hasOptiFine() ? Openfine.VERSION : "").putAll(classpathMods);
+
+		//Access transformations change which Minecraft members are visible to be inherited by mods
+		if (extension.hasAT()) {
+			key.put(true).putAll(AccessTransformerHelper.loadATs(extension.getAT()).stream().map(target -> target.getLeft() + ' ' + target.getRight()).collect(Collectors.toSet()));
+		} else {
+			key.put(false);
+		}
+
+		return key.build();
+	}
+
 	@Override
 	public void provide(Project project, LoomGradleExtension extension, Consumer<Runnable> postPopulationScheduler) throws Exception {
 		//If there's jars which need remapping, let's remap them
@@ -111,64 +165,88 @@ public class MappedModsProvider extends LogicalDependencyProvider {
 						.keepInputData(sourcesExist && !unsourced.isEmpty()) //Retain the class data if the second remapper will use it too
 						.build();
 
-		try (Closer closer = Closer.create((sourcesExist ? !unsourced.isEmpty() ? sourced.size() + 1 + unsourced.size() : sourced.size() : unsourced.size()) + 1)) {
+		try (Closer closer = Closer.create(2)) {
 			closer.register(remapper::finish);
-			remapper.readClassPathAsync(mappedProvider.MINECRAFT_INTERMEDIARY_JAR.toPath());
-			remapper.readClassPathAsync(mappedProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new));
-			remapper.readClassPathAsync(extraClasspath.stream().map(File::toPath).toArray(Path[]::new));
+			ClasspathSkeletons skeletons = extension.getClasspathSkeletons();
+			DerivedJarStore store = extension.getDerivedJarStore();
+			remapper.readClassPathAsync(skeletons.skeletonFor(mappedProvider.MINECRAFT_INTERMEDIARY_JAR.toPath()));
+			remapper.readClassPathAsync(skeletons.skeletonsFor(mappedProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new)));
+			remapper.readClassPathAsync(skeletons.skeletonsFor(extraClasspath.stream().map(File::toPath).toArray(Path[]::new)));
 
-			final class Mod implements Closeable {
+			final class Mod {
 				public final File input;
 				public final InputTag tag;
+				private final String storeKey;
 				private final File output;
 				private final Collection<File> outputs;
-				private OutputConsumerPath outputConsumer;
+				private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
 
-				public Mod(File input, InputTag tag, Collection<File> outputs) {
+				public Mod(File input, InputTag tag, String storeKey, Collection<File> outputs) {
 					this.input = input;
 					this.tag = tag;
+					this.storeKey = storeKey;
 					Iterator<File> it = outputs.iterator();
 					output = it.next();
 					this.outputs = ImmutableList.copyOf(it);
 				}
 
-				public OutputConsumerPath startRemapping(TinyRemapper remapper) throws IOException {
-					if (outputConsumer != null) throw new IllegalStateException("Already started remapping");
-					outputConsumer = new OutputConsumerPath(output.toPath());
+				public void remap(TinyRemapper remapper) {
+					if (!classes.isEmpty()) throw new IllegalStateException("Already remapped");
+					remapper.apply(classes::put, tag);
+				}
+
+				/** Write the remapped classes along with the mod's resources to the output(s), safe to do whilst other mods are being remapped */
+				public void write(TinyRemapper remapper) throws IOException {
+					Map<String, byte[]> replacements = new HashMap<>();
 
-					outputConsumer.addNonClassFiles(input.toPath());
-					remapper.apply(outputConsumer, tag);
+					Path temp = Files.createTempFile(output.getAbsoluteFile().getParentFile().toPath(), output.getName(), ".tmp");
+					try (ZipFile zip = new ZipFile(input); ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+						JarMetadata metadata = JarMetadata.of(input);
+						if (metadata.hasAccessTransformer() && AccessTransformerHelper.deobfATs(zip, remapper, replacements::put)) {
+							logger.info("Found and remapped access transformer in {}", input.getName());
+						}
 
-					if (AccessTransformerHelper.deobfATs(input, remapper, outputConsumer)) {
-						logger.info("Found and remapped access transformer in {}", input.getName());
-					}
+						JsonElement json = metadata.getModJson();
+						if (json != null && json.isJsonObject() && json.getAsJsonObject().has("jars")) {//Remove any nested jar entries if there are any
+							json.getAsJsonObject().remove("jars");
+							replacements.put("fabric.mod.json", GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
+						}
 
-					String modJSON = new String(ZipUtil.unpackEntry(input, "fabric.mod.json"), StandardCharsets.UTF_8);
-					JsonObject json = GSON.fromJson(modJSON, JsonObject.class);
+						for (ZipEntry entry : Collections.list(zip.entries())) {
+							if (entry.isDirectory() || entry.getName().endsWith(".class") || replacements.containsKey(entry.getName())) continue;
 
-					if (json.has("jars")) {//Remove any nested jar entries if there are any
-						json.remove("jars");
+							out.putNextEntry(new ZipEntry(entry.getName()));
+							try (InputStream in = zip.getInputStream(entry)) {
+								IOUtils.copy(in, out);
+							}
+							out.closeEntry();
+						}
 
-						File temp = File.createTempFile("fabric.mod", ".json");
-						Files.asCharSink(temp, StandardCharsets.UTF_8).write(GSON.toJson(json));
+						for (Entry<String, byte[]> entry : replacements.entrySet()) {
+							out.putNextEntry(new ZipEntry(entry.getKey()));
+							out.write(entry.getValue());
+							out.closeEntry();
+						}
 
-						outputConsumer.addNonClassFile(temp.toPath(), "fabric.mod.json");
-						temp.deleteOnExit(); //Done with it now
+						for (Entry<String, byte[]> entry : new TreeMap<>(classes).entrySet()) {
+							out.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+							out.write(entry.getValue());
+							out.closeEntry();
+						}
+					} catch (IOException | RuntimeException e) {
+						Files.deleteIfExists(temp);
+						throw e;
 					}
 
-					return outputConsumer;
-				}
-
-				@Override
-				public void close() throws IOException {
-					if (outputConsumer != null) {
-						outputConsumer.close();
-						output.setLastModified(input.lastModified());
+					Files.move(temp, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					classes.clear(); //Don't need to hold on to them any more
+					output.setLastModified(input.lastModified());
 
-						for (File extra : outputs) {
-							Files.copy(output, extra);
-						}
+					for (File extra : outputs) {
+						Files.copy(output.toPath(), extra.toPath(), StandardCopyOption.REPLACE_EXISTING);
 					}
+
+					if (storeKey != null) store.store(storeKey, Collections.singletonMap(STORED_NAME, output));
 				}
 
 				@Override
@@ -181,14 +259,14 @@ public class MappedModsProvider extends LogicalDependencyProvider {
 			for (Entry<File, Collection<File>> entry : sourced.asMap().entrySet()) {
 				InputTag tag = remapper.createInputTag();
 				remapper.readInputsAsync(tag, entry.getKey().toPath());
-				sourcedMods.add(new Mod(entry.getKey(), tag, entry.getValue()));
+				sourcedMods.add(new Mod(entry.getKey(), tag, makeStoreKey(extension, entry.getKey(), true), entry.getValue()));
 			}
 
 			List<Mod> unsourcedMods = new ArrayList<>(unsourced.size());
 			for (Entry<File, Collection<File>> entry : unsourced.asMap().entrySet()) {
 				InputTag tag = remapper.createInputTag();
 				remapper.readInputsAsync(tag, entry.getKey().toPath());
-				unsourcedMods.add(new Mod(entry.getKey(), tag, entry.getValue()));
+				unsourcedMods.add(new Mod(entry.getKey(), tag, makeStoreKey(extension, entry.getKey(), false), entry.getValue()));
 			}
 
 			//Watch out for any naming accidents putting things in the wrong place
@@ -210,11 +288,42 @@ public class MappedModsProvider extends LogicalDependencyProvider {
 			assert sourcedMods.isEmpty() == (remapper == null);
 			assert unsourcedMods.isEmpty() == (bonusRemapper == null);
 
-			for (Mod mod : sourcedMods) {
-				closer.register(mod).startRemapping(remapper);
-			}
-			for (Mod mod : unsourcedMods) {
-				closer.register(mod).startRemapping(bonusRemapper);
+			//Remapping each mod is already spread over the remapper's threads, but writing each out can overlap with remapping the next
+			ExecutorService writers = Executors.newFixedThreadPool(Math.max(1, Math.min(WRITE_THREADS, sourcedMods.size() + unsourcedMods.size())));
+			try {
+				List<Future<?>> writes = new ArrayList<>(sourcedMods.size() + unsourcedMods.size());
+
+				for (Mod mod : sourcedMods) {
+					TinyRemapper modRemapper = remapper;
+					mod.remap(modRemapper);
+					writes.add(writers.submit(() -> {
+						mod.write(modRemapper);
+						return null;
+					}));
+				}
+				for (Mod mod : unsourcedMods) {
+					TinyRemapper modRemapper = bonusRemapper;
+					mod.remap(modRemapper);
+					writes.add(writers.submit(() -> {
+						mod.write(modRemapper);
+						return null;
+					}));
+				}
+
+				for (Future<?> write : writes) {
+					try {
+						write.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException("Interrupted writing remapped mods", e);
+					} catch (ExecutionException e) {
+						Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+						Throwables.throwIfUnchecked(e.getCause());
+						throw new RuntimeException("Error writing remapped mod", e.getCause());
+					}
+				}
+			} finally {
+				writers.shutdownNow();
 			}
 		}
 	}
@@ -248,7 +357,7 @@ public class MappedModsProvider extends LogicalDependencyProvider {
 			scheduler.accept(() -> {
 				for (Entry<File, File> entry : extra.entries()) {
 					try {
-						Files.copy(entry.getKey(), entry.getValue());
+						Files.copy(entry.getKey().toPath(), entry.getValue().toPath(), StandardCopyOption.REPLACE_EXISTING);
 					} catch (IOException e) {
 						throw new UncheckedIOException("Error copying remapped source from " + entry.getKey() + " to " + entry.getValue(), e);
 					}
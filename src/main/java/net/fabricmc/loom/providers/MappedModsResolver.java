@@ -9,28 +9,36 @@ package net.fabricmc.loom.providers;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.zip.ZipEntry;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipError;
 import java.util.zip.ZipException;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
 import com.google.common.collect.ImmutableSet;
-import com.google.gson.JsonArray;
+import com.google.common.hash.Hashing;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
@@ -42,6 +50,8 @@ import net.fabricmc.loom.dependencies.ArtifactInfo;
 import net.fabricmc.loom.dependencies.DependencyProvider;
 import net.fabricmc.loom.dependencies.LogicalDependencyProvider;
 import net.fabricmc.loom.dependencies.LoomDependencyManager;
+import net.fabricmc.loom.util.ChecksumCache;
+import net.fabricmc.loom.util.JarMetadata;
 import net.fabricmc.stitch.util.Pair;
 
 public class MappedModsResolver extends LogicalDependencyProvider {
@@ -74,6 +84,23 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 		Logger logger = project.getLogger();
 		logger.info("Collected {} mods to remap to {}", mods.size(), modCache);
 
+		//Look for all the sources in one go rather than one mod at a time
+		ArtifactInfo.resolveSources(mods.stream().map(Pair::getRight).collect(Collectors.toList()));
+
+		//Extracting nested jars doesn't depend on anything else, so every mod's can be done at once
+		Map<File, List<NestedJar>> nestedJars = extension.extractJars ? extractNestedJars(extension, mods.stream().map(mod -> mod.getRight().getFile())) : Collections.emptyMap();
+
+		//How a mod's inherited members are named depends on the other mods on the classpath, so they all go into each mod's store key
+		ChecksumCache checksums = extension.getChecksumCache();
+		Set<String> classpathMods = new HashSet<>();
+		for (Pair<String, ArtifactInfo> mod : mods) {
+			classpathMods.add(checksums.sha1(mod.getRight().getFile()));
+		}
+		for (List<NestedJar> nests : nestedJars.values()) {
+			addNestedMods(checksums, nests, classpathMods);
+		}
+		provider.setClasspathMods(classpathMods);
+
 		for (Pair<String, ArtifactInfo> mod : mods) {
 			ArtifactInfo artifact = mod.getRight();
 			String group = artifact.group;
@@ -86,10 +113,11 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 			File input = artifact.getFile();
 			File output = new File(modCache, String.format("%s-%s@%s%s.jar", name, version, mappingsSuffix, classifier.replace(':', '-')));
 
-			remapIfNecessary(logger, input, output, artifact.getSources().isPresent());
-			if (extension.extractJars) handleNestedJars(project, extension, input.getPath(), input, mod.getLeft());
+			Optional<File> modSources = artifact.getSources();
+			remapIfNecessary(logger, extension, input, output, modSources.isPresent());
+			if (extension.extractJars) handleNestedJars(project, extension, input.getPath(), nestedJars.get(input), mod.getLeft());
 
-			artifact.getSources().ifPresent(sources -> {
+			modSources.ifPresent(sources -> {
 				File remappedSources = new File(modCache, String.format("%s-%s@%s%s-sources.jar", name, version, mappingsSuffix, classifier.replace(':', '-')));
 
 				if (!remappedSources.exists() || sources.lastModified() <= 0 || sources.lastModified() > remappedSources.lastModified()) {
@@ -115,12 +143,20 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 		}
 	}
 
-	private void remapIfNecessary(Logger logger, File input, File output, boolean hasSource) {
+	private void remapIfNecessary(Logger logger, LoomGradleExtension extension, File input, File output, boolean hasSource) throws IOException {
 		if (!output.exists() || input.lastModified() <= 0 || input.lastModified() > output.lastModified()) {
-			//If the output doesn't exist, or appears to be outdated compared to the input we'll remap it
-			logger.info("Queuing remapping of {} to {}", input.getName(), output.getName());
+			//If the output doesn't exist, or appears to be outdated compared to the input, it might have been remapped by another project
+			String storeKey = provider.makeStoreKey(extension, input, hasSource);
+			if (storeKey != null && extension.getDerivedJarStore().retrieve(storeKey, Collections.singletonMap(MappedModsProvider.STORED_NAME, output))) {
+				logger.info("Reusing remapped {} from the derived jar store for {}", input.getName(), output.getName());
+
+				provider.noteClasspath(input);
+			} else {
+				//Otherwise we'll remap it
+				logger.info("Queuing remapping of {} to {}", input.getName(), output.getName());
 
-			provider.queueRemap(input, output, hasSource);
+				provider.queueRemap(input, output, hasSource);
+			}
 		} else {
 			//Existing output seems fine, add it purely for classpath purposes remapping other mods
 			logger.info("{} is up to date with {}", output.getName(), input.getName());
@@ -129,60 +165,130 @@ public class MappedModsResolver extends LogicalDependencyProvider {
 		}
 	}
 
-	private void handleNestedJars(Project project, LoomGradleExtension extension, String origin, File input, String config) throws IOException {
-		try (JarFile zip = new JarFile(input)) {
-			ZipEntry entry = zip.getEntry("fabric.mod.json");
-			if (entry == null) throw new IllegalStateException("Mod collector missed a non-Fabric mod: " + origin);
+	/** A jar which has been extracted from inside another, along with any jars which were nested inside of it */
+	private static final class NestedJar {
+		public final String name;
+		public final File file;
+		public final List<NestedJar> nests;
 
-			JsonElement json = JsonParser.parseReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8));
-			if (json == null) return; //Apparently the mod has an empty json?
+		NestedJar(String name, File file, List<NestedJar> nests) {
+			this.name = name;
+			this.file = file;
+			this.nests = nests;
+		}
+	}
 
-			if (!json.isJsonArray() && !json.isJsonObject()) {//The mod JSON should be one of these two options
-				throw new AssertionError("Expected mod json in " + origin + " to be an array or object but was " + json);
-			}
+	private static void addNestedMods(ChecksumCache checksums, List<NestedJar> nests, Set<String> hashes) throws IOException {
+		for (NestedJar nest : nests) {
+			hashes.add(checksums.sha1(nest.file));
+			addNestedMods(checksums, nest.nests, hashes);
+		}
+	}
+
+	private static Map<File, List<NestedJar>> extractNestedJars(LoomGradleExtension extension, Stream<File> mods) throws IOException {
+		File nestedModCache = extension.getNestedModCache();
+		ChecksumCache checksums = extension.getChecksumCache();
 
-			for (JsonElement mod : json.isJsonArray() ? json.getAsJsonArray() : Collections.singleton(json.getAsJsonObject())) {
-				if (mod == null || !mod.isJsonObject()) {//A mod itself should be expressed as an object
-					throw new AssertionError("Expected mod json in " + origin + " to be an object but was " + mod);
+		try {
+			return mods.distinct().parallel().collect(Collectors.toMap(Function.identity(), mod -> {
+				try {
+					return extractNestedJars(nestedModCache, checksums, mod.getPath(), mod);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
 				}
+			}));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
 
-				if (!mod.getAsJsonObject().has("jars")) continue; //No nested mods
-				JsonArray nests = mod.getAsJsonObject().getAsJsonArray("jars");
+	/** Extract every jar nested in the given one, and every jar nested in those, with each nested jar handled in parallel */
+	private static List<NestedJar> extractNestedJars(File nestedModCache, ChecksumCache checksums, String origin, File input) throws IOException {
+		JarMetadata metadata = JarMetadata.of(input);
+		if (!metadata.isFabricMod()) throw new IllegalStateException("Mod collector missed a non-Fabric mod: " + origin);
 
-				for (JsonElement nest : nests) {
-					String fileName = nest.getAsJsonObject().getAsJsonPrimitive("file").getAsString();
-					project.getLogger().lifecycle("Found {} nested in {}", fileName, FilenameUtils.getName(origin));
-					processNestedJar(project, extension, origin, zip, fileName, config);
-				}
+		JsonElement json = metadata.getModJson();
+		if (json == null || json.isJsonNull()) return Collections.emptyList(); //Apparently the mod has an empty json?
+
+		if (!json.isJsonArray() && !json.isJsonObject()) {//The mod JSON should be one of these two options
+			throw new AssertionError("Expected mod json in " + origin + " to be an array or object but was " + json);
+		}
+
+		for (JsonElement mod : json.isJsonArray() ? json.getAsJsonArray() : Collections.singleton(json.getAsJsonObject())) {
+			if (mod == null || !mod.isJsonObject()) {//A mod itself should be expressed as an object
+				throw new AssertionError("Expected mod json in " + origin + " to be an object but was " + mod);
 			}
 		}
+
+		Set<String> nests = metadata.getNestedJars();
+		if (nests.isEmpty()) return Collections.emptyList(); //No nested mods, so no need to open the jar
+
+		String inputHash = checksums.sha1(input);
+		try (JarFile zip = new JarFile(input)) {
+			return nests.parallelStream().map(fileName -> {
+				try {
+					File nestedFile = extractNestedJar(nestedModCache, origin, zip, inputHash, fileName);
+
+					//Recurse into the newly extracted mod to see if it has anything nested inside
+					return new NestedJar(fileName, nestedFile, extractNestedJars(nestedModCache, checksums, origin, nestedFile));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 	}
 
-	private void processNestedJar(Project project, LoomGradleExtension extension, String origin, JarFile parent, String jarName, String config) throws IOException {
+	private static File extractNestedJar(File nestedModCache, String origin, JarFile parent, String parentHash, String jarName) throws IOException {
 		JarEntry entry = parent.getJarEntry(jarName); //There's an expectation this is not missing
 		if (entry == null) throw new RuntimeException("Unable to find declared nested jar " + jarName + " in " + parent.getName() + ", extracted from " + origin);
 
-		File nestedFile = new File(extension.getNestedModCache(), jarName = FilenameUtils.getName(jarName));
-		FileUtils.copyInputStreamToFile(parent.getInputStream(entry), nestedFile);
+		//Nested jars are kept by the SHA-1 of their parent and where they are in it, so each one only needs extracting the first time it's found
+		String name = FilenameUtils.getName(jarName);
+		File nestedFile = new File(nestedModCache, Hashing.sha256().hashString(parentHash + '/' + jarName, StandardCharsets.UTF_8) + "/" + name);
+		if (!nestedFile.exists()) {
+			Path directory = nestedFile.getParentFile().toPath();
+			Files.createDirectories(directory);
+
+			Path temp = Files.createTempFile(directory, name, ".tmp");
+			try {
+				try (InputStream in = parent.getInputStream(entry)) {
+					Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				Files.move(temp, nestedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
 
-		File remappedFile = new File(extension.getRemappedModCache(), jarName);
-		//There is an expectation the outer jar doesn't contain the nested jar's sources
-		//There is nothing stopping them from doing so, however this is not configured by default (so no one will)
-		remapIfNecessary(project.getLogger(), nestedFile, remappedFile, false);
+		return nestedFile;
+	}
+
+	private void handleNestedJars(Project project, LoomGradleExtension extension, String origin, List<NestedJar> nests, String config) throws IOException {
+		for (NestedJar nest : nests) {
+			project.getLogger().lifecycle("Found {} nested in {}", nest.name, FilenameUtils.getName(origin));
 
-		//Recurse into the newly extracted mod to see if it has anything nested inside
-		handleNestedJars(project, extension, origin, nestedFile, config);
+			File remappedFile = new File(extension.getRemappedModCache(), FilenameUtils.getName(nest.name));
+			//There is an expectation the outer jar doesn't contain the nested jar's sources
+			//There is nothing stopping them from doing so, however this is not configured by default (so no one will)
+			remapIfNecessary(project.getLogger(), extension, nest.file, remappedFile, false);
 
-		addDependency(remappedFile, project, config);
+			//Then add anything which was nested inside the nested mod
+			handleNestedJars(project, extension, origin, nest.nests, config);
+
+			addDependency(remappedFile, project, config);
+		}
 	}
 
 	public static JsonObject findInstallerJson(Logger logger, File file, String launchMethod) {
-		try (JarFile jarFile = new JarFile(file)) {
-			ZipEntry entry = jarFile.getEntry(!launchMethod.isEmpty() ? "fabric-installer." + launchMethod + ".json" : "fabric-installer.json");
-			if (entry == null) return null;
+		try {
+			byte[] json = JarMetadata.of(file).getInstallerJson(!launchMethod.isEmpty() ? "fabric-installer." + launchMethod + ".json" : "fabric-installer.json");
+			if (json == null) return null;
 
-			try (Reader reader = new InputStreamReader(jarFile.getInputStream(entry), StandardCharsets.UTF_8)) {
-				return JsonParser.parseReader(reader).getAsJsonObject();
+			try {
+				return JsonParser.parseString(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
 			} catch (JsonSyntaxException e) {
 				logger.warn("Error reading installer JSON in {}", file.getPath(), e);
 			}
@@ -25,41 +25,136 @@
 package net.fabricmc.loom.providers;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.lang.ref.SoftReference;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-import net.fabricmc.loom.util.StaticPathWatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import net.fabricmc.loom.providers.mappings.MappingsIndex;
 import net.fabricmc.mappings.Mappings;
-import net.fabricmc.mappings.MappingsProvider;
 
 public final class MappingsCache {
-	public static final MappingsCache INSTANCE = new MappingsCache();
+	private static final class CachedMappings {
+		public final MappingsIndex mappings;
+		public final byte[] hash;
+		private final long size, lastModified;
+
+		CachedMappings(MappingsIndex mappings, byte[] hash, BasicFileAttributes attributes) {
+			this.mappings = mappings;
+			this.hash = hash;
+			size = attributes.size();
+			lastModified = attributes.lastModifiedTime().toMillis();
+		}
+
+		boolean isFresh(BasicFileAttributes attributes) {
+			return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+		}
+
+		CachedMappings touch(BasicFileAttributes attributes) {
+			return new CachedMappings(mappings, hash, attributes);
+		}
+	}
+
+	public static final class Stats {
+		public final long hits, misses, evictions, loadTime, indexBytes;
+
+		Stats(long hits, long misses, long evictions, long loadTime, long indexBytes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.loadTime = loadTime;
+			this.indexBytes = indexBytes;
+		}
+
+		@Override
+		public String toString() {
+			return hits + " hits, " + misses + " misses (taking " + TimeUnit.NANOSECONDS.toMillis(loadTime) + "ms), " + evictions + " evictions, " + indexBytes + " index bytes cached";
+		}
+	}
+
+	private static final Logger LOGGER = Logging.getLogger(MappingsCache.class);
+	/**
+	 * The total size of the mappings index files to hold on to in MB, can be set with {@code -Dfabric.loom.mappingsIndexBudget=<MB>}.
+	 * This is how much is memory mapped (or on Windows read onto the heap), it doesn't include the tables and lookups built from
+	 * the cached mappings, which are only held weakly against them so go once they are evicted.
+	 */
+	private static final long INDEX_BUDGET = Long.getLong("fabric.loom.mappingsIndexBudget", 256) * 1024 * 1024;
+	public static final MappingsCache INSTANCE = new MappingsCache(INDEX_BUDGET);
 
-	private final Map<Path, SoftReference<Mappings>> mappingsCache = new HashMap<>();
+	private final Cache<Path, CachedMappings> mappingsCache;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loadTime = new LongAdder();
 
-	private MappingsCache() {
+	private MappingsCache(long indexBudget) {
+		mappingsCache = CacheBuilder.newBuilder().maximumWeight(indexBudget).<Path, CachedMappings>weigher((path, mappings) -> mappings.mappings.byteSize()).recordStats().build();
 	}
 
-	//TODO: loom doesn't actually use new mappings when the mappings change until the Gradle daemons are stopped
-    public Mappings get(Path mappingsPath) throws IOException {
-		mappingsPath = mappingsPath.toAbsolutePath();
+	/**
+	 * Get the mappings for the given tiny file, only reloading them if the contents of the file have changed.
+	 *
+	 * <p>The file's size and last modified time are checked each call, with the contents only being hashed if either has changed.
+	 * This ensures changes made by other daemons (or anything else) are picked up without relying on being told about them.
+	 */
+	public Mappings get(Path mappingsPath) throws IOException {
+		Path path = mappingsPath.toAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		CachedMappings cached = mappingsCache.getIfPresent(path);
+		if (cached != null && cached.isFresh(attributes)) {
+			hits.increment();
+			return cached.mappings;
+		}
 
-        SoftReference<Mappings> ref = !StaticPathWatcher.INSTANCE.hasFileChanged(mappingsPath) ? mappingsCache.get(mappingsPath) : null;
-        Mappings mappings = ref != null ? ref.get() : null;
+		boolean[] loaded = new boolean[1];
+		try {
+			cached = mappingsCache.asMap().compute(path, (key, existing) -> {
+				try {
+					if (existing != null && existing.isFresh(attributes)) {//Loaded whilst we were waiting
+						hits.increment();
+						return existing;
+					}
 
-        if (mappings == null) {
-        	try (InputStream stream = Files.newInputStream(mappingsPath)) {
-                mappings = MappingsProvider.readTinyMappings(stream, false);
-                mappingsCache.put(mappingsPath, new SoftReference<>(mappings));
-            }
+					byte[] hash = MappingsIndex.hash(key);
+					if (existing != null && Arrays.equals(existing.hash, hash)) {//Touched but not actually changed
+						hits.increment();
+						return existing.touch(attributes);
+					}
 
-        	StaticPathWatcher.INSTANCE.resetFile(mappingsPath);
-        }
+					misses.increment();
+					long start = System.nanoTime();
+					MappingsIndex mappings = MappingsIndex.load(key, hash);
+					loadTime.add(System.nanoTime() - start);
 
-        return mappings;
-    }
+					loaded[0] = true;
+					return new CachedMappings(mappings, hash, attributes);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		if (loaded[0]) LOGGER.info("Loaded mappings from {} ({})", path, getStats());
+		return cached.mappings;
+	}
+
+	public void invalidate(Path mappingsPath) {
+		mappingsCache.invalidate(mappingsPath.toAbsolutePath());
+	}
+
+	public Stats getStats() {
+		long indexBytes = mappingsCache.asMap().values().stream().mapToLong(mappings -> mappings.mappings.byteSize()).sum();
+		return new Stats(hits.sum(), misses.sum(), mappingsCache.stats().evictionCount(), loadTime.sum(), indexBytes);
+	}
 }
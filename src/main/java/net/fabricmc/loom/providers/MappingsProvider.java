@@ -37,14 +37,19 @@ import java.util.Set;
 import java.util.StringJoiner;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -67,12 +72,16 @@ import net.fabricmc.loom.providers.MinecraftProvider.MinecraftVersion;
 import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile;
 import net.fabricmc.loom.providers.StackedMappingsProvider.MappingFile.MappingType;
 import net.fabricmc.loom.providers.mappings.EnigmaReader;
+import net.fabricmc.loom.providers.mappings.LayerCache;
 import net.fabricmc.loom.providers.mappings.MappingBlob;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
 import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+import net.fabricmc.loom.providers.mappings.MappingsIndex;
+import net.fabricmc.loom.providers.mappings.MappingsLookup;
 import net.fabricmc.loom.providers.mappings.TinyDuplicator;
 import net.fabricmc.loom.providers.mappings.TinyReader;
+import net.fabricmc.loom.providers.mappings.TinyReader.Target;
 import net.fabricmc.loom.providers.mappings.TinyV2toV1;
 import net.fabricmc.loom.providers.mappings.TinyWriter;
 import net.fabricmc.loom.util.Constants;
@@ -112,6 +121,9 @@ public class MappingsProvider extends LogicalDependencyProvider {
 	// The mappings we use in practice
 	public File MAPPINGS_TINY;
 	private Path parameterNames, decompileComments;
+	/** The parameter names from {@link #parameterNames}, kept from writing them out if that has just been done */
+	private Map<String, String[]> parameterLines;
+	private LayerCache layerCache;
 
 	public Mappings getMappings() throws IOException {
 		return MappingsCache.INSTANCE.get(MAPPINGS_TINY.toPath());
@@ -121,6 +133,11 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		return decompileComments;
 	}
 
+	/** The parameter names given to the named jar alongside {@link #MAPPINGS_TINY}, which might not exist if the mappings don't have any */
+	public Path getParameterNames() {
+		return parameterNames;
+	}
+
 	@Override
 	public Set<Class<? extends DependencyProvider>> getDependencies() {
 		return ImmutableSet.of(StackedMappingsProvider.class, MinecraftProvider.class);
@@ -180,6 +197,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				Optional<MappingFile> interProvider = searchForIntermediaries(versionToMappings.getOrDefault(minecraftVersion, Collections.emptyList()), minecraftProvider.getNeededHeaders());
 
 				LazyMappings intermediaryMaker;
+				Path intermediaryOrigin;
 				if (interProvider.isPresent()) {
 					MappingFile mappings = interProvider.get();
 
@@ -198,9 +216,12 @@ public class MappingsProvider extends LogicalDependencyProvider {
 							FileUtils.copyInputStreamToFile(new GZIPInputStream(new FileInputStream(mappings.origin)), MAPPINGS_TINY_BASE);
 							break free;
 
-						case TinyV2:
-							TinyV2toV1.convert(mappings.origin.toPath(), MAPPINGS_TINY_BASE.toPath(), parameterNames, decompileComments);
+						case TinyV2: {//Read everything in one pass rather than converting the names and then going back for the parameters and comments
+							MappingBlob extras = MappingBlob.create();
+							TinyReader.readTiny(mappings.origin.toPath(), Target.copy(MAPPINGS_TINY_BASE.toPath()), Target.names("intermediary", "named", extras), Target.comments("intermediary", extras));
+							writeExtras(project, extras);
 							break free;
+						}
 
 						case Enigma:
 						case Tiny:
@@ -211,6 +232,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 
 					project.getLogger().lifecycle(":Using intermediaries from " + mappings.origin.getName());
 					intermediaryMaker = mappings;
+					intermediaryOrigin = mappings.origin.toPath();
 				} else {
 					if (!intermediaryNames.exists()) {//Grab intermediary mappings from Github
 						project.getLogger().lifecycle(":Downloading intermediaries to " + intermediaryNames.getName());
@@ -225,244 +247,282 @@ public class MappingsProvider extends LogicalDependencyProvider {
 					}
 
 					intermediaryMaker = () -> new DirectMappings(intermediaryNames.toPath());
+					intermediaryOrigin = intermediaryNames.toPath();
 				}
 
-				MappingBlob mappings = new MappingBlob();
+				MappingBlob mappings = MappingBlob.create();
+				Mappings interMappings; //Only want to read the Intermediaries in once
 				try (ActiveMappings intermediaries = intermediaryMaker.open()) {
-					TinyReader.fillFromColumn(intermediaries.getMappings(), "intermediary", mappings);
+					interMappings = TinyReader.readMappings(intermediaries.getMappings());
+					TinyReader.fillFromColumn(interMappings, "intermediary", mappings);
 
 					if (minecraftProvider.needsIntermediaries()) minecraftProvider.giveIntermediaries(intermediaries.getMappings());
 				}
-				Map<String, MappingBlob> versionToIntermediaries = new HashMap<>();
-				Map<String, JarMergeOrder> versionToMerging = new HashMap<>();
+				Map<String, MappingBlob> versionToIntermediaries = new ConcurrentHashMap<>();
+				Map<String, JarMergeOrder> versionToMerging = new ConcurrentHashMap<>();
+				Map<String, byte[]> versionToIntermediaryHash = new ConcurrentHashMap<>();
+
+				ExecutorService executor = Executors.newFixedThreadPool(Math.min(mappingFiles.size(), Math.max(Runtime.getRuntime().availableProcessors() / 2, 1)));
+				Object jarLock = new Object();
+				try {
+					List<Future<MappingBlob>> layers = new ArrayList<>(mappingFiles.size());
+
+					for (MappingFile layer : mappingFiles) {//Each layer can be loaded independently, only the merging needs to be done in order
+						layers.add(executor.submit(() -> {
+							MappingFile mapping = layer;
+
+							//What the layer ends up as depends on the Intermediaries used to rename it and the jar any Enigma mappings are specialised against
+							byte[] intermediaryHash = versionToIntermediaryHash.computeIfAbsent(mapping.minecraftVersion, version -> {
+								Path intermediaryNames = minecraftVersion.equals(version) ? intermediaryOrigin : searchForIntermediaries(versionToMappings.getOrDefault(version, Collections.emptyList()), null)
+										.map(mappingFile -> mappingFile.origin.toPath()).orElseGet(() -> getIntermediaries(extension, version));
 
-				for (MappingFile mapping : mappingFiles) {
-					project.getLogger().lifecycle(":loading " + mapping.origin.getName());
+								try {
+									return MappingsIndex.hash(intermediaryNames);
+								} catch (IOException e) {
+									throw new UncheckedIOException("Error reading Intermediary mappings for " + version, e);
+								}
+							});
+							String merging = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version)).name();
+							if (minecraftVersion.equals(mapping.minecraftVersion)) merging += '/' + minecraftProvider.getMergeStrategy().name();
+
+							String cacheKey = LayerCache.key(mapping.origin.toPath(), mapping.minecraftVersion, intermediaryHash, merging);
+							MappingBlob cached = layerCache.read(cacheKey);
+							if (cached != null) {
+								project.getLogger().lifecycle(":using cached " + mapping.origin.getName());
+								return cached;
+							}
 
-					MappingBlob gains = new MappingBlob();
-					boolean nativeNames = false;
+							project.getLogger().lifecycle(":loading " + mapping.origin.getName());
+							MappingBlob gains = MappingBlob.create();
+							boolean nativeNames = false;
 
-					switch (mapping.type) {
-					case Enigma: {
-						EnigmaReader.readEnigma(mapping.origin.toPath(), gains);
+							switch (mapping.type) {
+							case Enigma: {
+								EnigmaReader.readEnigma(mapping.origin.toPath(), gains, true);
 
-						if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
-							nativeNames = true;
-						} else {
-							assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
-								gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
-							assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
-								gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
-							assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
-								gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
-						}
+								if (gains.stream().parallel().noneMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_"))) {
+									nativeNames = true;
+								} else {
+									assert gains.stream().parallel().filter(classMapping -> classMapping.to() != null).allMatch(classMapping -> classMapping.from.startsWith("net/minecraft/class_") || classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")):
+										gains.stream().filter(classMapping -> classMapping.to() != null && !classMapping.from.startsWith("net/minecraft/class_") && !classMapping.from.matches("com\\/mojang\\/.+\\$class_\\d+")).map(classMapping -> classMapping.from).collect(Collectors.joining(", ", "Found unexpected initial mapping classes: [", "]"));
+									assert gains.streamMethods().parallel().filter(method -> method.name() != null).allMatch(method -> method.fromName.startsWith("method_") || method.fromName.equals(method.name())):
+										gains.streamMethods().filter(method -> method.name() != null && !method.fromName.startsWith("method_")).map(method -> method.fromName + method.fromDesc).collect(Collectors.joining(", ", "Found unexpected method mappings: ", "]"));
+									assert gains.streamFields().parallel().filter(field -> field.name() != null).allMatch(field -> field.fromName.startsWith("field_")):
+										gains.streamFields().filter(field -> field.name() != null && !field.fromName.startsWith("field_")).map(field -> field.fromName).collect(Collectors.joining(", ", "Found unexpected field mappings: ", "]"));
+								}
 
-						String from;
-						Path contextJar;
-						if (minecraftVersion.equals(mapping.minecraftVersion)) {
-							if (nativeNames) {
-								if (minecraftProvider.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
-								from = Iterables.getOnlyElement(minecraftProvider.getNativeHeaders());
-								contextJar = minecraftProvider.getMergedJar();
-							} else {
-								from = "intermediary";
-								try (ActiveMappings intermediaries = intermediaryMaker.open()) {
-									contextJar = MapJarsTiny.makeInterJar(project, extension, minecraftProvider, Optional.of(intermediaries.getMappings()));
+								String from;
+								Path contextJar;
+								synchronized (jarLock) {//Making the context jars isn't safe to do for multiple layers at once
+									if (minecraftVersion.equals(mapping.minecraftVersion)) {
+										if (nativeNames) {
+											if (minecraftProvider.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
+											from = Iterables.getOnlyElement(minecraftProvider.getNativeHeaders());
+											contextJar = minecraftProvider.getMergedJar();
+										} else {
+											from = "intermediary";
+											try (ActiveMappings intermediaries = intermediaryMaker.open()) {
+												contextJar = MapJarsTiny.makeInterJar(project, extension, minecraftProvider, Optional.of(intermediaries.getMappings()));
+											}
+										}
+									} else {
+										MinecraftVersion version = MinecraftProvider.makeMergedJar(project, extension, mapping.minecraftVersion, Optional.empty(), JarMergeOrder.INDIFFERENT);
+
+										if (nativeNames) {
+											if (version.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
+											from = Iterables.getOnlyElement(version.getNativeHeaders());
+											contextJar = version.getMergedJar();
+										} else {
+											from = "intermediary";
+											contextJar = MapJarsTiny.makeInterJar(project, extension, version, //See if we've actually got the old Intermediaries per chance too
+													searchForIntermediaries(versionToMappings.getOrDefault(mapping.minecraftVersion, Collections.emptyList()), version.getNeededHeaders()).map(mappingFile -> mappingFile.origin.toPath()));
+										}
+									}
 								}
-							}
-						} else {
-							MinecraftVersion version = MinecraftProvider.makeMergedJar(project, extension, mapping.minecraftVersion, Optional.empty(), JarMergeOrder.INDIFFERENT);
 
-							if (nativeNames) {
-								if (version.getMergeStrategy() == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named Enigma mappings for a split named version!");
-								from = Iterables.getOnlyElement(version.getNativeHeaders());
-								contextJar = version.getMergedJar();
-							} else {
-								from = "intermediary";
-								contextJar = MapJarsTiny.makeInterJar(project, extension, version, //See if we've actually got the old Intermediaries per chance too
-										searchForIntermediaries(versionToMappings.getOrDefault(mapping.minecraftVersion, Collections.emptyList()), version.getNeededHeaders()).map(mappingFile -> mappingFile.origin.toPath()));
-							}
-						}
+								Path specialisedMappings = MAPPINGS_DIR.toPath().resolve(FilenameUtils.removeExtension(mapping.origin.getName()) + "-specialised.jar");
+								try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + specialisedMappings.toUri()), Collections.singletonMap("create", "true"))) {
+									Path destination = fs.getPath("mappings/mappings.tiny");
 
-						Path specialisedMappings = MAPPINGS_DIR.toPath().resolve(FilenameUtils.removeExtension(mapping.origin.getName()) + "-specialised.jar");
-						try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:" + specialisedMappings.toUri()), Collections.singletonMap("create", "true"))) {
-							Path destination = fs.getPath("mappings/mappings.tiny");
+									Files.createDirectories(destination.getParent());
+									MapSpecializedMethodsCommand.run(contextJar, "enigma", mapping.origin.toPath(), "tinyv2:" + from + ":named", destination);
+								} catch (URISyntaxException e) {
+									throw new IllegalStateException("Cannot convert jar path to URI?", e);
+								} catch (IOException e) {
+									throw new UncheckedIOException("Error creating mappings jar", e);
+								}
 
-							Files.createDirectories(destination.getParent());
-							MapSpecializedMethodsCommand.run(contextJar, "enigma", mapping.origin.toPath(), "tinyv2:" + from + ":named", destination);
-						} catch (URISyntaxException e) {
-							throw new IllegalStateException("Cannot convert jar path to URI?", e);
-						} catch (IOException e) {
-							throw new UncheckedIOException("Error creating mappings jar", e);
-						}
+								mapping = new MappingFile(specialisedMappings.toFile(), mapping.name, mapping.version, mapping.minecraftVersion, MappingType.TinyV2, ImmutableList.of(from, "named"));
+							}
 
-						mapping = new MappingFile(specialisedMappings.toFile(), mapping.name, mapping.version, mapping.minecraftVersion, MappingType.TinyV2, ImmutableList.of(from, "named"));
-					}
+							case TinyV1:
+							case TinyV2: {
+								String origin;
+								if (mapping.getNamespaces().contains("intermediary")) {
+									origin = "intermediary";
+								} else {
+									JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
+									if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
 
-					case TinyV1:
-					case TinyV2: {
-						String origin;
-						if (mapping.getNamespaces().contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
+									nativeNames = true;
+									origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
+								}
+								assert mapping.getNamespaces().contains("named");
 
-							nativeNames = true;
-							origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
-						}
-						assert mapping.getNamespaces().contains("named");
-
-						try (FileSystem fileSystem = FileSystems.newFileSystem(mapping.origin.toPath(), null)) {
-							TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), origin, "named", gains);
-
-							if (mapping.type == MappingType.TinyV2) {
-								UnaryOperator<String> classRemapper;
-								if (!origin.equals(mapping.getNamespaces().get(0))) {
-									MappingBlob nativeToOrigin = new MappingBlob();
-									TinyReader.readTiny(fileSystem.getPath("mappings/mappings.tiny"), mapping.getNamespaces().get(0), origin, nativeToOrigin);
-									classRemapper = name -> {
-										String remap = nativeToOrigin.tryMapName(name);
-										return remap != null ? remap : name;
-									};
-								} else {
-									classRemapper = null; //Origin column is the main column, descriptors won't need to be renamed
+								try (FileSystem fileSystem = FileSystems.newFileSystem(mapping.origin.toPath(), null)) {
+									Path tiny = fileSystem.getPath("mappings/mappings.tiny");
+
+									if (mapping.type == MappingType.TinyV2) {//Only V2 has comments to pick up
+										TinyReader.readTiny(tiny, Target.names(origin, "named", gains), Target.comments(origin, gains));
+									} else {
+										TinyReader.readTiny(tiny, Target.names(origin, "named", gains));
+									}
 								}
-								TinyReader.readComments(fileSystem.getPath("mappings/mappings.tiny"), origin, classRemapper, gains);
+								break;
 							}
-						}
-						break;
-					}
-
-					case TinyGz: {
-						Collection<String> namespaces = TinyReader.readHeaders(mapping.origin.toPath());
 
-						String origin;
-						if (namespaces.contains("intermediary")) {
-							origin = "intermediary";
-						} else {
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
+							case TinyGz: {
+								Collection<String> namespaces = TinyReader.readHeaders(mapping.origin.toPath());
 
-							nativeNames = true;
-							origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
-						}
-						assert namespaces.contains("named");
+								String origin;
+								if (namespaces.contains("intermediary")) {
+									origin = "intermediary";
+								} else {
+									JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(mapping.minecraftVersion, version -> MinecraftProvider.findMergeStrategy(project, extension, version));
+									if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
 
-						TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
-						break;
-					}
+									nativeNames = true;
+									origin = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
+								}
+								assert namespaces.contains("named");
 
-					case Tiny: //Should have already enlightened this by now
-						throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
-					}
+								TinyReader.readTiny(mapping.origin.toPath(), origin, "named", gains);
+								break;
+							}
 
-					if (nativeNames) {
-						MappingBlob renamer = versionToIntermediaries.computeIfAbsent(mapping.minecraftVersion, version -> {
-							ActiveMappings mappingsPipe = null;
-							Path intermediaryNames;
-							if (!minecraftVersion.equals(version)) {
-								intermediaryNames = searchForIntermediaries(versionToMappings.getOrDefault(version, Collections.emptyList()), null)
-										.map(mappingFile -> mappingFile.origin.toPath()).orElseGet(() -> getIntermediaries(extension, version));
-							} else {
-								try {
-									mappingsPipe = intermediaryMaker.open();
-								} catch (IOException e) {
-									throw new UncheckedIOException("Error opening Intermediary maker", e);
-								}
-								intermediaryNames = mappingsPipe.getMappings();
+							case Tiny: //Should have already enlightened this by now
+								throw new IllegalStateException("Unexpected mappings type " + mapping.type + " from " + mapping.origin);
 							}
 
-							JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(version, v -> MinecraftProvider.findMergeStrategy(project, extension, v));
-							if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
+							if (nativeNames) {
+								MappingBlob renamer = versionToIntermediaries.computeIfAbsent(mapping.minecraftVersion, version -> {
+									JarMergeOrder mergeStrategy = versionToMerging.computeIfAbsent(version, v -> MinecraftProvider.findMergeStrategy(project, extension, v));
+									if (mergeStrategy == JarMergeOrder.LAST) throw new InvalidUserDataException("Cannot use natively named mappings for a split named version!");
+									String nativeHeader = Iterables.getOnlyElement(mergeStrategy.getNativeHeaders());
+
+									MappingBlob inters = MappingBlob.create();
+									if (!minecraftVersion.equals(version)) {
+										Path intermediaryNames = searchForIntermediaries(versionToMappings.getOrDefault(version, Collections.emptyList()), null)
+												.map(mappingFile -> mappingFile.origin.toPath()).orElseGet(() -> getIntermediaries(extension, version));
+
+										try {
+											TinyReader.readTiny(intermediaryNames, nativeHeader, "intermediary", inters);
+										} catch (IOException e) {
+											throw new UncheckedIOException("Error reading Intermediary mappings for " + version, e);
+										}
+									} else {//Already have the Intermediaries for the current version
+										TinyReader.readTiny(interMappings, nativeHeader, "intermediary", inters);
+									}
+									return inters;
+								});
+
+								logErroneousMappings(project.getLogger(), gains, renamer);
+								gains = gains.rename(renamer);
+							}
 
-							MappingBlob inters = new MappingBlob();
 							try {
-								TinyReader.readTiny(intermediaryNames, Iterables.getOnlyElement(mergeStrategy.getNativeHeaders()), "intermediary", inters);
+								layerCache.write(cacheKey, gains);
 							} catch (IOException e) {
-								throw new UncheckedIOException("Error reading Intermediary mappings for " + version, e);
-							} finally {
-								if (mappingsPipe != null) {
-									try {
-										mappingsPipe.close();
-									} catch (IOException e) {
-										project.getLogger().warn("Error closing Intermediary maker", e);
-									}
-								}
+								project.getLogger().warn("Unable to cache mappings from " + layer.origin.getName(), e);
 							}
-							return inters;
-						});
 
-						logErroneousMappings(project.getLogger(), gains, renamer);
-						gains = gains.rename(renamer);
+							return gains;
+						}));
 					}
 
-					for (Mapping classMapping : gains) {
-						//If the name has been lost since it was named there's no point including it
-						if (!mappings.has(classMapping.from)) continue;
-
-						Mapping existingClass = mappings.get(classMapping.from);
-						if (existingClass.to() == null && !classMapping.from.equals(classMapping.to())) {
-							mappings.acceptClass(classMapping.from, classMapping.to());
+					for (Future<MappingBlob> layer : layers) {
+						MappingBlob gains;
+						try {
+							gains = layer.get();
+						} catch (ExecutionException e) {
+							Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+							Throwables.throwIfUnchecked(e.getCause());
+							throw e;
 						}
 
-						if (!existingClass.comment().isPresent()) {
-							classMapping.comment().ifPresent(comment -> {
-								mappings.acceptClassComment(classMapping.from, comment);
-							});
-						}
+						for (Mapping classMapping : gains) {
+							//If the name has been lost since it was named there's no point including it
+							if (!mappings.has(classMapping.from)) continue;
 
-						for (Method method : classMapping.methods()) {
-							if (!existingClass.hasMethod(method) && method.fromName.charAt(0) != '<') continue;
-
-							Method existingMethod = existingClass.method(method);
-							if (existingMethod.name() == null && !existingMethod.fromName.equals(method.name())) {
-								mappings.acceptMethod(classMapping.from, method.fromName, method.fromDesc, existingClass.to(), method.name(), method.desc());
+							Mapping existingClass = mappings.get(classMapping.from);
+							if (existingClass.to() == null && !classMapping.from.equals(classMapping.to())) {
+								mappings.acceptClass(classMapping.from, classMapping.to());
 							}
 
-							if (!existingMethod.comment().isPresent()) {
-								method.comment().ifPresent(comment -> {
-									mappings.acceptMethodComment(classMapping.from, method.fromName, method.fromDesc, comment);
+							if (!existingClass.comment().isPresent()) {
+								classMapping.comment().ifPresent(comment -> {
+									mappings.acceptClassComment(classMapping.from, comment);
 								});
 							}
 
-							if (method.hasArgs()) {
-								method.iterateArgs((index, arg) -> {
-									if (existingMethod.arg(index) == null) {
-										mappings.acceptMethodArg(classMapping.from, method.fromName, method.fromDesc, index, arg);
-									}
-								});
-								method.iterateArgComments((comment, index) -> {
-									if (!existingMethod.argComment(index).isPresent()) {
-										mappings.acceptMethodArgComment(classMapping.from, method.fromName, method.fromDesc, index, comment);
-									}
-								});
-							}
-						}
+							for (Method method : classMapping.methods()) {
+								if (!existingClass.hasMethod(method) && method.fromName.charAt(0) != '<') continue;
+
+								Method existingMethod = existingClass.method(method);
+								if (existingMethod.name() == null && !existingMethod.fromName.equals(method.name())) {
+									mappings.acceptMethod(classMapping.from, method.fromName, method.fromDesc, existingClass.to(), method.name(), method.desc());
+								}
 
-						for (Field field : classMapping.fields()) {
-							if (!existingClass.hasField(field)) continue;
+								if (!existingMethod.comment().isPresent()) {
+									method.comment().ifPresent(comment -> {
+										mappings.acceptMethodComment(classMapping.from, method.fromName, method.fromDesc, comment);
+									});
+								}
 
-							Field existingField = existingClass.field(field);
-							if (existingField.name() == null && !existingField.fromName.equals(field.name())) {
-								mappings.acceptField(classMapping.from, field.fromName, field.fromDesc, existingClass.to(), field.name(), field.desc());
+								if (method.hasArgs()) {
+									method.iterateArgs((index, arg) -> {
+										if (existingMethod.arg(index) == null) {
+											mappings.acceptMethodArg(classMapping.from, method.fromName, method.fromDesc, index, arg);
+										}
+									});
+									method.iterateArgComments((comment, index) -> {
+										if (!existingMethod.argComment(index).isPresent()) {
+											mappings.acceptMethodArgComment(classMapping.from, method.fromName, method.fromDesc, index, comment);
+										}
+									});
+								}
 							}
 
-							if (!existingField.comment().isPresent()) {
-								field.comment().ifPresent(comment -> {
-									mappings.acceptFieldComment(classMapping.from, field.fromName, field.fromDesc, comment);
-								});
+							for (Field field : classMapping.fields()) {
+								if (!existingClass.hasField(field)) continue;
+
+								Field existingField = existingClass.field(field);
+								if (existingField.name() == null && !existingField.fromName.equals(field.name())) {
+									mappings.acceptField(classMapping.from, field.fromName, field.fromDesc, existingClass.to(), field.name(), field.desc());
+								}
+
+								if (!existingField.comment().isPresent()) {
+									field.comment().ifPresent(comment -> {
+										mappings.acceptFieldComment(classMapping.from, field.fromName, field.fromDesc, comment);
+									});
+								}
 							}
 						}
 					}
+				} finally {
+					executor.shutdownNow();
 				}
 
-				project.getLogger().lifecycle(":combining mappings");
-				Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> intermediaryMappings;
-				try (ActiveMappings intermediaries = intermediaryMaker.open()) {
-					intermediaryMappings = TinyReader.readTiny(intermediaries.getMappings(), "intermediary");
+				try {
+					int removed = layerCache.collectGarbage(LayerCache.MAX_SIZE);
+					if (removed > 0) project.getLogger().info("Removed " + removed + " old layers from the mappings layer cache");
+				} catch (IOException e) {
+					project.getLogger().warn("Unable to trim the mappings layer cache", e);
 				}
 
+				project.getLogger().lifecycle(":combining mappings");
+				Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> intermediaryMappings = TinyReader.readTiny(interMappings, "intermediary");
+
 				project.getLogger().lifecycle(":writing " + MAPPINGS_TINY_BASE.getName());
 				try (TinyWriter writer = new TinyWriter(MAPPINGS_TINY_BASE.toPath(), Stream.concat(minecraftProvider.getNeededHeaders().stream(), Stream.of("named")).toArray(String[]::new))) {
 					for (Entry<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> entry : intermediaryMappings.entrySet()) {
@@ -522,40 +582,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 					}
 				}
 
-				if (mappings.hasArgNames()) {
-					project.getLogger().lifecycle(":writing " + parameterNames.getFileName());
-					try (BufferedWriter writer = Files.newBufferedWriter(parameterNames)) {
-						for (Mapping mapping : mappings) {
-							for (Method method : mapping.methodsWithArgs()) {
-								if (!method.hasArgNames()) continue; //Just comments for the arguments
-
-								writer.write(mapping.toOr(mapping.from));
-								writer.write('/');
-								writer.write(method.fromName);
-								writer.write(method.fromDesc);
-								writer.newLine();
-
-								method.<IOException>iterateArgs((index, arg) -> {
-									assert arg != null; //Should be skipping nulls
-
-									writer.write('\t');
-									writer.write(Integer.toString(index));
-									writer.write(':');
-									writer.write(' ');
-									writer.write(arg);
-									writer.newLine();
-								});
-							}
-						}
-					}
-				}
-
-				if (mappings.hasComments()) {
-					project.getLogger().lifecycle(":writing " + decompileComments.getFileName());
-					try (BufferedWriter writer = Files.newBufferedWriter(decompileComments)) {
-						TinyV2toV1.writeComments(writer, mappings);
-					}
-				}
+				writeExtras(project, mappings);
 
 				if (MAPPINGS_TINY.exists()) {
 					MAPPINGS_TINY.delete();
@@ -598,8 +625,7 @@ public class MappingsProvider extends LogicalDependencyProvider {
 			if (minecraftProvider.needsIntermediaries()) minecraftProvider.giveIntermediaries(MAPPINGS_TINY.toPath());
 		}
 
-		if (Files.exists(parameterNames)) {
-			//Merge the tiny mappings with parameter names
+		if (parameterLines == null && Files.exists(parameterNames)) {
 			Map<String, String[]> lines = new HashMap<>();
 
 			try (BufferedReader reader = Files.newBufferedReader(parameterNames)) {
@@ -621,6 +647,13 @@ public class MappingsProvider extends LogicalDependencyProvider {
 				}
 			}
 
+			parameterLines = lines;
+		}
+
+		if (parameterLines != null) {
+			//Merge the tiny mappings with parameter names
+			Map<String, String[]> lines = parameterLines;
+
 			mcRemappingFactory = (fromM, toM) -> new IMappingProvider() {
 				private final IMappingProvider normal = TinyRemapperMappingsHelper.create(extension, getMappings(), fromM, toM);
 
@@ -629,6 +662,12 @@ public class MappingsProvider extends LogicalDependencyProvider {
 					load(classMap, fieldMap, methodMap);
 					if ("intermediary".equals(fromM)) {
 						localMap.putAll(lines);
+					} else if ("named".equals(toM)) {//Going straight to named without passing through Intermediary
+						try {
+							localMap.putAll(rekeyParameters(lines, fromM));
+						} catch (IOException e) {
+							throw new UncheckedIOException("Error getting complete mappings", e);
+						}
 					}
 				}
 
@@ -822,6 +861,78 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		}
 	}
 
+	/** Convert the given parameter lines from being keyed by Intermediary method names and descriptors to those from the given namespace */
+	private Map<String, String[]> rekeyParameters(Map<String, String[]> lines, String namespace) throws IOException {
+		MappingsLookup lookup = MappingsLookup.of(getMappings());
+		Map<String, String[]> out = new HashMap<>();
+
+		for (Entry<String, String[]> entry : lines.entrySet()) {
+			String line = entry.getKey(); //namedOwner/interNameinterDesc
+			int split = line.lastIndexOf('/', line.indexOf('('));
+			String owner = line.substring(0, split);
+			String method = line.substring(split + 1);
+
+			for (MethodEntry methodEntry : lookup.getMethods("named", owner)) {
+				EntryTriple inter = methodEntry.get("intermediary");
+
+				if (method.equals(inter.getName() + inter.getDesc())) {
+					EntryTriple from = methodEntry.get(namespace);
+					if (from != null) out.put(owner + '/' + from.getName() + from.getDesc(), entry.getValue());
+					break;
+				}
+			}
+		}
+
+		return out;
+	}
+
+	/** Write out the parameter names and comments from the given (Intermediary to named) mappings, keeping the parameter names to use without reading them back */
+	private void writeExtras(Project project, MappingBlob mappings) throws IOException {
+		if (mappings.hasArgNames()) {
+			Map<String, String[]> lines = new HashMap<>();
+
+			project.getLogger().lifecycle(":writing " + parameterNames.getFileName());
+			try (BufferedWriter writer = Files.newBufferedWriter(parameterNames)) {
+				for (Mapping mapping : mappings) {
+					for (Method method : mapping.methodsWithArgs()) {
+						if (!method.hasArgNames()) continue; //Just comments for the arguments
+
+						String line = mapping.toOr(mapping.from) + '/' + method.fromName + method.fromDesc;
+						writer.write(line);
+						writer.newLine();
+
+						method.<IOException>iterateArgs((index, arg) -> {
+							assert arg != null; //Should be skipping nulls
+
+							writer.write('\t');
+							writer.write(Integer.toString(index));
+							writer.write(':');
+							writer.write(' ');
+							writer.write(arg);
+							writer.newLine();
+
+							String[] lineSet = lines.get(line);
+							if (lineSet == null) {
+								//The args are iterated backwards so the biggest index is first
+								lines.put(line, lineSet = new String[index + 1]);
+							}
+							lineSet[index] = arg;
+						});
+					}
+				}
+			}
+
+			parameterLines = lines;
+		}
+
+		if (mappings.hasComments()) {
+			project.getLogger().lifecycle(":writing " + decompileComments.getFileName());
+			try (BufferedWriter writer = Files.newBufferedWriter(decompileComments)) {
+				TinyV2toV1.writeComments(writer, mappings);
+			}
+		}
+	}
+
 	private void writeStackHistory(String version) {
 		assert !knownStack; //No need to go through all this if it's already in the history
 
@@ -921,21 +1032,26 @@ public class MappingsProvider extends LogicalDependencyProvider {
 		}
 
 		intermediaryNames = new File(MAPPINGS_DIR, INTERMEDIARY + "-intermediary.tiny");
+		layerCache = new LayerCache(new File(MAPPINGS_DIR, "layers").toPath());
 		MAPPINGS_TINY_BASE = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + "-base.tiny");
 		MAPPINGS_TINY = new File(MAPPINGS_DIR, mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + ".tiny");
 		parameterNames = new File(MAPPINGS_DIR, mappingsName + "-params-" + minecraftVersion + '-' + mappingsVersion).toPath();
+		parameterLines = null;
 		decompileComments = parameterNames.resolveSibling(mappingsName + "-tiny-" + minecraftVersion + '-' + mappingsVersion + "-decomp.tiny");
 
 		MAPPINGS_MIXIN_EXPORT = new File(extension.getProjectBuildCache(), "mixin-map-" + minecraftVersion + '-' + mappingsVersion + ".tiny");
 	}
 
 	public void clearFiles() {
+		MappingsCache.INSTANCE.invalidate(MAPPINGS_TINY.toPath());
 		MAPPINGS_TINY.delete();
+		MappingsIndex.indexFor(MAPPINGS_TINY.toPath()).toFile().delete();
 		MAPPINGS_TINY_BASE.delete();
 		intermediaryNames.delete();
 		try {
 			Files.deleteIfExists(parameterNames);
 			Files.deleteIfExists(decompileComments);
+			layerCache.clear();
 		} catch (IOException e) {
 			e.printStackTrace(); //That's troublesome
 		}
@@ -29,7 +29,9 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -40,7 +42,7 @@ import org.gradle.api.GradleException;
 import org.gradle.api.Project;
 
 import net.fabricmc.loom.LoomGradleExtension;
-import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ChecksumCache;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
 import net.fabricmc.loom.util.MinecraftVersionInfo;
@@ -64,7 +66,8 @@ public class MinecraftAssetsProvider {
 
 		File assetsInfo = new File(assets, "indexes" + File.separator + assetIndex.getFabricId(minecraftProvider.minecraftVersion) + ".json");
 
-		if (!assetsInfo.exists() || !Checksum.equals(assetsInfo, assetIndex.hash)) {
+		ChecksumCache checksums = extension.getChecksumCache();
+		if (!assetsInfo.exists() || !checksums.matches(assetsInfo, assetIndex.hash)) {
 			project.getLogger().lifecycle(":downloading asset index");
 
 			if (offline) {
@@ -92,6 +95,15 @@ public class MinecraftAssetsProvider {
 		}
 
 		Map<String, AssetObject> parent = index.getFileMap();
+		Map<File, String> objects = new HashMap<>(parent.size());
+
+		for (AssetObject object : parent.values()) {
+			String sha1 = object.getHash();
+			objects.put(new File(assets, "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1), sha1);
+		}
+
+		//Only check each object once, even if multiple assets share it
+		Set<File> mismatched = checksums.findMismatches(objects);
 
 		for (Map.Entry<String, AssetObject> entry : parent.entrySet()) {
 			AssetObject object = entry.getValue();
@@ -99,7 +111,7 @@ public class MinecraftAssetsProvider {
 			String filename = "objects" + File.separator + sha1.substring(0, 2) + File.separator + sha1;
 			File file = new File(assets, filename);
 
-			if (!file.exists() || !Checksum.equals(file, sha1)) {
+			if (mismatched.remove(file)) {
 				if (offline) {
 					if (file.exists()) {
 						project.getLogger().warn("Outdated asset " + entry.getKey());
@@ -25,10 +25,14 @@
 package net.fabricmc.loom.providers;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.gradle.api.Project;
 
@@ -41,7 +45,10 @@ import net.fabricmc.loom.dependencies.LogicalDependencyProvider;
 import net.fabricmc.loom.providers.openfine.Openfine;
 import net.fabricmc.loom.util.AccessTransformerHelper;
 import net.fabricmc.loom.util.Constants;
+import net.fabricmc.loom.util.DerivedJarStore;
+import net.fabricmc.loom.util.JarPostProcessor;
 import net.fabricmc.loom.util.MapJarsTiny;
+import net.fabricmc.stitch.commands.CommandFixNesting;
 import net.fabricmc.stitch.util.Pair;
 
 public class MinecraftMappedProvider extends LogicalDependencyProvider {
@@ -99,16 +106,30 @@ public class MinecraftMappedProvider extends LogicalDependencyProvider {
         MINECRAFT_MAPPED_JAR = new File(cache, JarNameFactory.NAMED.getJarName(jarName));
 
         if (!getMappedJar().exists() || !getIntermediaryJar().exists() || atChange) {
-            if (getMappedJar().exists()) {
-                getMappedJar().delete();
+            Map<String, File> outputs = new HashMap<>();
+            outputs.put("named.jar", getMappedJar());
+            if (!minecraftProvider.getMergedJar().equals(getIntermediaryJar().toPath())) outputs.put("intermediary.jar", getIntermediaryJar());
+
+            DerivedJarStore store = extension.getDerivedJarStore();
+            //Local name suggestors are arbitrary code from the build script, so there's no telling if two projects' would name things the same
+            String storeKey = extension.getLocalSuggestors().isEmpty() ? makeStoreKey(extension, minecraftProvider, mappingsProvider, targets) : null;
+
+            if (storeKey != null && store.retrieve(storeKey, outputs)) {
+                project.getLogger().info("Reusing mapped Minecraft jars from the derived jar store");
+            } else {
+                for (File output : outputs.values()) {
+                    if (output.exists()) output.delete();
+                }
+                if (extension.hasOptiFine()) Openfine.applyBonusMappings(mappingsProvider);
+                MapJarsTiny.mapJars(minecraftProvider, this, project, targets);
+
+                JarPostProcessor postProcessor = new JarPostProcessor().addJarProcessor("Stitch nesting fixes", CommandFixNesting::run);
+                if (extension.shouldAddVersionIfNeeded()) postProcessor.addResourceIfMissing("version.json", MapJarsTiny.makeVersionJSON(minecraftProvider.minecraftVersion));
+                if (extension.hasOptiFine()) postProcessor.addClassTransformer("OptiFine removals", Openfine.makeRemovalTransformer(project.getLogger(), mappingsProvider));
+                postProcessor.apply(project.getLogger(), getMappedJar());
+
+                if (storeKey != null) store.store(storeKey, outputs);
             }
-            if (getIntermediaryJar().exists() && !minecraftProvider.getMergedJar().equals(getIntermediaryJar().toPath())) {
-                getIntermediaryJar().delete();
-            }
-            if (extension.hasOptiFine()) Openfine.applyBonusMappings(mappingsProvider);
-            MapJarsTiny.mapJars(minecraftProvider, this, project);
-            if (!targets.isEmpty()) MapJarsTiny.transform(project, targets, this, mappingsProvider);
-            if (extension.hasOptiFine()) Openfine.transformRemovals(project.getLogger(), mappingsProvider, getMappedJar());
         }
 
         if (!MINECRAFT_MAPPED_JAR.exists()) {
@@ -119,6 +140,25 @@ public class MinecraftMappedProvider extends LogicalDependencyProvider {
         addDependency("net.minecraft:minecraft:".concat(JarNameFactory.MERGED_INTERMEDIARY.getDependencyName(jarName)), project, Constants.MINECRAFT_INTERMEDIARY);
     }
 
+    /** Make the key the mapped jars are held in the {@link DerivedJarStore} with, from everything which changes what ends up in them */
+    private static String makeStoreKey(LoomGradleExtension extension, MinecraftProvider minecraftProvider, MappingsProvider mappingsProvider, Set<Pair<String, String>> targets) throws IOException {
+    	DerivedJarStore.Key key = new DerivedJarStore.Key().put("mapped-minecraft").put(minecraftProvider.minecraftVersion).put(minecraftProvider.getMergeStrategy().name())
+    			.put(minecraftProvider.getMergedJar()).put(mappingsProvider.MAPPINGS_TINY.toPath());
+
+    	//The parameter names aren't in the tiny file, so mappings which only differ by them would otherwise get the same key
+    	File parameterNames = mappingsProvider.getParameterNames().toFile();
+    	if (parameterNames.exists()) {
+    		key.put(true).put(parameterNames.toPath());
+    	} else {
+    		key.put(false);
+    	}
+
+    	//OptiFine's bonus mappings are made from the tiny file, so are covered by it and the version
+    	return key.putAll(targets.stream().map(target -> target.getLeft() + ' ' + target.getRight()).collect(Collectors.toSet()))
+    			.put(extension.shouldBulldozeMappings()).put(extension.shouldAddVersionIfNeeded())
+    			.put(extension.hasOptiFine() ? Openfine.VERSION : "").build();
+    }
+
     public Collection<File> getMapperPaths() {
         return getProvider(MinecraftLibraryProvider.class).getLibraries();
     }
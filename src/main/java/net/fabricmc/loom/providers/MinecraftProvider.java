@@ -27,11 +27,13 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
-import java.util.zip.ZipError;
+import java.util.zip.ZipException;
 
+import com.google.common.base.Throwables;
 import com.google.common.util.concurrent.Callables;
 import com.google.gson.Gson;
 
@@ -46,7 +48,7 @@ import net.fabricmc.loom.LoomGradleExtension.JarMergeOrder;
 import net.fabricmc.loom.dependencies.LoomDependencyManager;
 import net.fabricmc.loom.dependencies.PhysicalDependencyProvider;
 import net.fabricmc.loom.providers.openfine.Openfine;
-import net.fabricmc.loom.util.Checksum;
+import net.fabricmc.loom.util.ChecksumCache;
 import net.fabricmc.loom.util.Constants;
 import net.fabricmc.loom.util.DownloadUtil;
 import net.fabricmc.loom.util.GradleSupport;
@@ -57,8 +59,8 @@ import net.fabricmc.loom.util.HexaFunction;
 import net.fabricmc.loom.util.MinecraftVersionInfo.AssetIndex;
 import net.fabricmc.loom.util.MinecraftVersionInfo.Download;
 import net.fabricmc.loom.util.MinecraftVersionInfo.Library;
+import net.fabricmc.loom.util.ParallelJarMerger;
 import net.fabricmc.loom.util.StaticPathWatcher;
-import net.fabricmc.stitch.merge.JarMerger;
 
 public class MinecraftProvider extends PhysicalDependencyProvider implements MinecraftVersionAdaptable {
 	private static final class VersionKey {
@@ -121,7 +123,7 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 					if (!mergedJar.exists()) {
 						try {
 							mergeJars(logger, clientJar, serverJar, mergedJar);
-						} catch (ZipError e) {
+						} catch (ZipException e) {
 							DownloadUtil.delete(clientJar);
 							DownloadUtil.delete(serverJar);
 
@@ -144,16 +146,30 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 						JarNamingStrategy nameStrategy = makeNamingStrategy();
 
 						Path interClient = mergedJar.toPath().resolveSibling(JarNameFactory.CLIENT_INTERMEDIARY.getJarName(nameStrategy));
-						if (Files.notExists(interClient)) {
-							//Can't use the library provider yet as the configuration might need more things adding to it
-							Set<File> libraries = getJavaLibraries(project);
-							MapJarsTiny.remapJar(logger, clientJar.toPath(), mappings, false, libraries, interClient, "client");
-						}
-
 						Path interServer = interClient.resolveSibling(JarNameFactory.SERVER_INTERMEDIARY.getJarName(nameStrategy));
-						if (Files.notExists(interServer)) {
-							Set<File> libraries = Collections.emptySet(); //The server contains all its own dependencies
-							MapJarsTiny.remapJar(logger, serverJar.toPath(), mappings, false, libraries, interServer, "server");
+
+						//The two sides don't depend on each other, so can be remapped at the same time
+						ForkJoinTask<?> serverRemap = ForkJoinPool.commonPool().submit(() -> {
+							if (Files.notExists(interServer)) {
+								Set<File> libraries = Collections.emptySet(); //The server contains all its own dependencies
+								MapJarsTiny.remapJar(logger, serverJar.toPath(), mappings, false, libraries, interServer, "server");
+							}
+							return null;
+						});
+						try {
+							if (Files.notExists(interClient)) {
+								//Can't use the library provider yet as the configuration might need more things adding to it
+								Set<File> libraries = getJavaLibraries(project);
+								MapJarsTiny.remapJar(logger, clientJar.toPath(), mappings, false, libraries, interClient, "client");
+							}
+
+							serverRemap.get();
+						} catch (ExecutionException e) {
+							Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+							Throwables.throwIfUnchecked(e.getCause());
+							throw new RuntimeException("Error remapping " + serverJar, e.getCause());
+						} finally {
+							serverRemap.cancel(false);
 						}
 
 						MinecraftProvider.mergeJars(logger, interClient.toFile(), interServer.toFile(), mergedJar);
@@ -364,8 +380,8 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 				throw new GradleException("Missing " + version + " jar(s); Client: " + clientJar.exists() + ", Server: " + serverJar.exists());
 			}
 		} else {
-			if (needClient) downloadJar(project.getLogger(), version, versionInfo, clientJar, "client");
-			if (needServer) downloadJar(project.getLogger(), version, versionInfo, serverJar, "server");
+			if (needClient) downloadJar(project.getLogger(), extension.getChecksumCache(), version, versionInfo, clientJar, "client");
+			if (needServer) downloadJar(project.getLogger(), extension.getChecksumCache(), version, versionInfo, serverJar, "server");
 		}
 
 		return versionFactory.apply(project, versionInfo, clientJar, serverJar, mergeOrder, mergedJar);
@@ -474,13 +490,13 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 		}
 	}
 
-	private static void downloadJar(Logger logger, String minecraftVersion, MinecraftVersionInfo versionInfo, File to, String name) throws IOException {
+	private static void downloadJar(Logger logger, ChecksumCache checksums, String minecraftVersion, MinecraftVersionInfo versionInfo, File to, String name) throws IOException {
 		Download download = versionInfo.downloads.get(name);
-		downloadJar(logger, minecraftVersion, download.getURLs(), to, name, download.hash);
+		downloadJar(logger, checksums, minecraftVersion, download.getURLs(), to, name, download.hash);
 	}
 
-	private static void downloadJar(Logger logger, String minecraftVersion, URL[] from, File to, String name, String hash) throws IOException {
-		if (!to.exists() || !Checksum.equals(to, hash) && StaticPathWatcher.INSTANCE.hasFileChanged(to.toPath())) {
+	private static void downloadJar(Logger logger, ChecksumCache checksums, String minecraftVersion, URL[] from, File to, String name, String hash) throws IOException {
+		if (!to.exists() || !checksums.matches(to, hash) && StaticPathWatcher.INSTANCE.hasFileChanged(to.toPath())) {
 			logger.debug("Downloading Minecraft {} {} jar", minecraftVersion, name);
 
 			boolean succeeded = false;
@@ -494,7 +510,7 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 						logger.warn("Failed to download {} {} jar from {}", new Object[] {minecraftVersion, name, fromCandidate, e});
 						continue on; //If it completely failed once it's unlikely to succeed immediately afterwards
 					}
-				} while (attempt++ <= DOWNLOAD_ATTEMPTS && !Checksum.equals(to, hash));
+				} while (attempt++ <= DOWNLOAD_ATTEMPTS && !checksums.matches(to, hash));
 
 				if (attempt > DOWNLOAD_ATTEMPTS) {//Apparently we just couldn't get a jar which had the right hash
 					logger.debug("Failed to download intact jar from {}", fromCandidate);
@@ -517,10 +533,7 @@ public class MinecraftProvider extends PhysicalDependencyProvider implements Min
 	private static void mergeJars(Logger logger, File MINECRAFT_CLIENT_JAR, File MINECRAFT_SERVER_JAR, File MINECRAFT_MERGED_JAR) throws IOException {
 		logger.lifecycle(":merging jars");
 
-		try (JarMerger jarMerger = new JarMerger(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR)) {
-			jarMerger.enableSyntheticParamsOffset();
-			jarMerger.merge();
-		}
+		ParallelJarMerger.merge(MINECRAFT_CLIENT_JAR, MINECRAFT_SERVER_JAR, MINECRAFT_MERGED_JAR, true);
 	}
 
 
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
+import net.fabricmc.loom.util.ThrowingIntObjConsumer;
+
+/** A {@link Mapping} which keeps its members in flat tables rather than maps of objects, with the fields and methods it gives out being views onto them */
+class CompactMapping extends Mapping {
+	private static final class MemberTable {
+		private static final String[] EMPTY = new String[0];
+		/** How many members there can be before it is worth hashing them rather than just searching through */
+		private static final int LINEAR_LIMIT = 8;
+		private final StringPool pool;
+		int size;
+		String[] fromNames = EMPTY, fromDescs = EMPTY, toNames = EMPTY;
+		//Most members will never have any of these so they're only made when first needed
+		private String[] toDescs, comments;
+		private String[][] args;
+		private int[] index;
+
+		MemberTable(StringPool pool) {
+			this.pool = pool;
+		}
+
+		private static int hash(String name, String desc) {
+			int hash = name.hashCode() * 31 + Objects.hashCode(desc);
+			return hash ^ hash >>> 16;
+		}
+
+		int find(String name, String desc) {
+			if (index == null) {
+				for (int i = 0; i < size; i++) {
+					if (fromNames[i].equals(name) && Objects.equals(fromDescs[i], desc)) return i;
+				}
+			} else {
+				int mask = index.length - 1;
+
+				for (int slot = hash(name, desc) & mask, entry; (entry = index[slot]) != 0; slot = slot + 1 & mask) {
+					if (fromNames[entry - 1].equals(name) && Objects.equals(fromDescs[entry - 1], desc)) return entry - 1;
+				}
+			}
+
+			return -1;
+		}
+
+		int add(String name, String desc) {
+			if (size == fromNames.length) grow();
+
+			int member = size++;
+			fromNames[member] = pool.intern(name);
+			fromDescs[member] = pool.intern(desc);
+
+			if (index != null) {
+				if (size * 2 > index.length) {
+					reindex(index.length * 2);
+				} else {
+					insert(member);
+				}
+			} else if (size > LINEAR_LIMIT) {
+				reindex(Integer.highestOneBit(size) << 2);
+			}
+
+			return member;
+		}
+
+		private void grow() {
+			int capacity = Math.max(4, fromNames.length + (fromNames.length >> 1));
+
+			fromNames = Arrays.copyOf(fromNames, capacity);
+			fromDescs = Arrays.copyOf(fromDescs, capacity);
+			toNames = Arrays.copyOf(toNames, capacity);
+			if (toDescs != null) toDescs = Arrays.copyOf(toDescs, capacity);
+			if (comments != null) comments = Arrays.copyOf(comments, capacity);
+			if (args != null) args = Arrays.copyOf(args, capacity);
+		}
+
+		private void reindex(int capacity) {
+			index = new int[capacity];
+
+			for (int member = 0; member < size; member++) {
+				insert(member);
+			}
+		}
+
+		private void insert(int member) {
+			int mask = index.length - 1;
+
+			int slot = hash(fromNames[member], fromDescs[member]) & mask;
+			while (index[slot] != 0) slot = slot + 1 & mask;
+
+			index[slot] = member + 1;
+		}
+
+		void setMapping(int member, String name, String desc) {
+			toNames[member] = pool.intern(name);
+
+			if (desc != null || toDescs != null) {
+				if (toDescs == null) toDescs = new String[fromNames.length];
+				toDescs[member] = pool.intern(desc);
+			}
+		}
+
+		String toDesc(int member) {
+			return toDescs != null ? toDescs[member] : null;
+		}
+
+		void setComment(int member, String comment) {
+			if (comment == null && comments == null) return;
+
+			if (comments == null) comments = new String[fromNames.length];
+			comments[member] = comment;
+		}
+
+		String comment(int member) {
+			return comments != null ? comments[member] : null;
+		}
+
+		/** Argument names and comments for the given method, interleaved by local variable index */
+		String[] args(int member) {
+			return args != null ? args[member] : null;
+		}
+
+		void setArgs(int member, String[] memberArgs) {
+			if (args == null) args = new String[fromNames.length][];
+			args[member] = memberArgs;
+		}
+	}
+
+	private static final class CompactField extends Field {
+		private final MemberTable table;
+		private final int member;
+
+		CompactField(MemberTable table, int member) {
+			super(table.fromNames[member], table.fromDescs[member]);
+
+			this.table = table;
+			this.member = member;
+		}
+
+		@Override
+		void setMapping(String name, String desc) {
+			table.setMapping(member, name, desc);
+		}
+
+		@Override
+		void setComment(String comment) {
+			table.setComment(member, comment);
+		}
+
+		@Override
+		public String name() {
+			return table.toNames[member];
+		}
+
+		@Override
+		public String desc() {
+			return table.toDesc(member);
+		}
+
+		@Override
+		public Optional<String> comment() {
+			return Optional.ofNullable(table.comment(member));
+		}
+
+		@Override
+		public boolean hasComment() {
+			return table.comment(member) != null;
+		}
+	}
+
+	private static final class CompactMethod extends Method {
+		private final MemberTable table;
+		private final int member;
+
+		CompactMethod(MemberTable table, int member) {
+			super(table.fromNames[member], table.fromDescs[member]);
+
+			this.table = table;
+			this.member = member;
+		}
+
+		@Override
+		void setMapping(String name, String desc) {
+			if (table == null) return; //Called from Method's constructor for <init>s, which the table will have already named
+
+			table.setMapping(member, name, desc);
+		}
+
+		@Override
+		void setComment(String comment) {
+			table.setComment(member, comment);
+		}
+
+		@Override
+		public String name() {
+			return table.toNames[member];
+		}
+
+		@Override
+		public String desc() {
+			return table.toDesc(member);
+		}
+
+		@Override
+		public Optional<String> comment() {
+			return Optional.ofNullable(table.comment(member));
+		}
+
+		@Override
+		public boolean hasComment() {
+			return table.comment(member) != null;
+		}
+
+		private String[] extendTo(int index) {
+			String[] args = table.args(member);
+
+			if (args == null || args.length <= index * 2) {
+				args = args == null ? new String[index * 2 + 2] : Arrays.copyOf(args, index * 2 + 2);
+				table.setArgs(member, args);
+			}
+
+			return args;
+		}
+
+		@Override
+		void addArg(int index, String name) {
+			extendTo(index)[index * 2] = table.pool.intern(name);
+		}
+
+		@Override
+		void addArgComment(int index, String comment) {
+			extendTo(index)[index * 2 + 1] = comment;
+		}
+
+		@Override
+		public boolean hasArgs() {
+			return table.args(member) != null;
+		}
+
+		private boolean hasAny(int offset) {
+			String[] args = table.args(member);
+
+			if (args != null) {
+				for (int i = offset; i < args.length; i += 2) {
+					if (args[i] != null) return true;
+				}
+			}
+
+			return false;
+		}
+
+		@Override
+		public boolean hasArgNames() {
+			return hasAny(0);
+		}
+
+		@Override
+		public boolean hasArgComments() {
+			return hasAny(1);
+		}
+
+		@Override
+		Arg[] cloneArgs() {
+			String[] args = table.args(member);
+			if (args == null) return new Arg[0];
+
+			Arg[] out = new Arg[args.length / 2];
+			for (int i = 0; i < out.length; i++) {
+				String name = args[i * 2];
+				String comment = args[i * 2 + 1];
+				if (name == null && comment == null) continue;
+
+				Arg arg = out[i] = new Arg();
+				arg.name = name;
+				arg.comment = comment;
+			}
+
+			return out;
+		}
+
+		@Override
+		public String arg(int index) {
+			String[] args = table.args(member);
+			return args != null && args.length > index * 2 ? args[index * 2] : null;
+		}
+
+		@Override
+		public Optional<String> argComment(int index) {
+			String[] args = table.args(member);
+			return args != null && args.length > index * 2 ? Optional.ofNullable(args[index * 2 + 1]) : Optional.empty();
+		}
+
+		@Override
+		public <T extends Throwable> void iterateArgs(ThrowingIntObjConsumer<String, T> argConsumer) throws T {
+			String[] args = table.args(member);
+			if (args == null) return;
+
+			for (int i = args.length / 2 - 1; i >= 0; i--) {
+				if (args[i * 2] != null) argConsumer.accept(i, args[i * 2]);
+			}
+		}
+
+		@Override
+		public void iterateArgComments(ObjIntConsumer<String> argCommentConsumer) {
+			String[] args = table.args(member);
+			if (args == null) return;
+
+			for (int i = 0, end = args.length / 2; i < end; i++) {
+				if (args[i * 2 + 1] != null) argCommentConsumer.accept(args[i * 2 + 1], i);
+			}
+		}
+	}
+
+	private final MemberTable methodTable, fieldTable;
+
+	CompactMapping(String from, StringPool pool) {
+		super(from, Collections.emptyMap(), Collections.emptyMap());
+
+		methodTable = new MemberTable(pool);
+		fieldTable = new MemberTable(pool);
+	}
+
+	@Override
+	public Iterable<Method> methods() {
+		return () -> methodStream().iterator();
+	}
+
+	@Override
+	public boolean hasMethod(Method other) {
+		return methodTable.find(other.fromName, other.fromDesc) >= 0;
+	}
+
+	@Override
+	Method method(String srcName, String srcDesc) {
+		int member = methodTable.find(srcName, srcDesc);
+
+		if (member < 0) {
+			member = methodTable.add(srcName, srcDesc);
+			//If we're an <init> (or theoretically a <clinit>) we'll never get a name so should do it now
+			if (srcName.charAt(0) == '<') methodTable.setMapping(member, srcName, null);
+		}
+
+		return new CompactMethod(methodTable, member);
+	}
+
+	@Override
+	public Iterable<Field> fields() {
+		return () -> IntStream.range(0, fieldTable.size).<Field>mapToObj(member -> new CompactField(fieldTable, member)).iterator();
+	}
+
+	@Override
+	public boolean hasField(Field other) {
+		return fieldTable.find(other.fromName, other.fromDesc) >= 0;
+	}
+
+	@Override
+	Field field(String srcName, String srcDesc) {
+		int member = fieldTable.find(srcName, srcDesc);
+		if (member < 0) member = fieldTable.add(srcName, srcDesc);
+
+		return new CompactField(fieldTable, member);
+	}
+
+	@Override
+	Stream<Method> methodStream() {
+		return IntStream.range(0, methodTable.size).<Method>mapToObj(member -> new CompactMethod(methodTable, member));
+	}
+}
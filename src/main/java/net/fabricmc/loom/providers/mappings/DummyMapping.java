@@ -7,6 +7,7 @@
  */
 package net.fabricmc.loom.providers.mappings;
 
+import java.util.Collections;
 import java.util.Optional;
 import java.util.function.ObjIntConsumer;
 
@@ -109,7 +110,7 @@ class DummyMapping extends Mapping {
 	}
 
 	public DummyMapping(String from) {
-		super(from);
+		super(from, Collections.emptyMap(), Collections.emptyMap());
 	}
 
 	@Override
@@ -26,32 +26,75 @@ package net.fabricmc.loom.providers.mappings;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class EnigmaReader {
 	public static void readEnigma(Path dir, IMappingAcceptor mappingAcceptor) throws IOException {
-		try (Stream<Path> stream = Files.find(FileSystems.newFileSystem(dir, null).getPath("/"),
+		readEnigma(dir, mappingAcceptor, false);
+	}
+
+	/**
+	 * Read the Enigma mappings from the given zip, optionally reading the mapping files in parallel.
+	 * When in parallel each file is read into its own blob, which are only passed on to the given acceptor once every file has been read.
+	 * They are passed on in the same order the files would have been read in serially, so files which map the same entry always resolve the same way.
+	 */
+	public static void readEnigma(Path dir, IMappingAcceptor mappingAcceptor, boolean parallel) throws IOException {
+		try (FileSystem fs = FileSystems.newFileSystem(dir, null); Stream<Path> stream = Files.find(fs.getPath("/"),
 				Integer.MAX_VALUE,
 				(path, attr) -> attr.isRegularFile() && path.getFileName().toString().endsWith(".mapping"),
 				FileVisitOption.FOLLOW_LINKS)) {
-			stream.forEach(file -> readEnigmaFile(file, mappingAcceptor));
+			if (parallel) {
+				List<MappingBlob> fileBlobs = stream.parallel().map(file -> {
+					MappingBlob blob = MappingBlob.create();
+					readEnigmaFile(file, blob);
+					return blob;
+				}).collect(Collectors.toList());
+
+				for (MappingBlob blob : fileBlobs) {
+					blob.copyTo(mappingAcceptor);
+				}
+			} else {
+				stream.forEach(file -> readEnigmaFile(file, mappingAcceptor));
+			}
 		} catch (UncheckedIOException e) {
 			throw e.getCause();
 		}
 	}
 
+	/** Splits the given line on spaces from the given index like {@code line.substring(start).split(" ")} would, returning one more than parts can hold if there are too many */
+	private static int split(String line, int start, String[] parts) {
+		int end = line.length();
+		while (end > start && line.charAt(end - 1) == ' ') end--; //Trailing empty parts are dropped by split
+
+		int count = 0;
+		for (int from = start; ; from++) {
+			if (count == parts.length) return count + 1;
+
+			int space = line.indexOf(' ', from);
+			if (space < 0 || space > end) space = end;
+			parts[count++] = line.substring(from, space);
+
+			if (space == end) return count;
+			from = space;
+		}
+	}
+
 	private static void readEnigmaFile(Path file, IMappingAcceptor mappingAcceptor) {
 		try (BufferedReader reader = Files.newBufferedReader(file)) {
 			String line;
 			Queue<String> contextStack = Collections.asLifoQueue(new ArrayDeque<>());
 			Queue<String> contextNamedStack = Collections.asLifoQueue(new ArrayDeque<>());
+			String[] parts = new String[4];
 			int indent = 0;
 
 			while ((line = reader.readLine()) != null) {
@@ -74,12 +117,11 @@ public class EnigmaReader {
 					}
 				}
 
-				line = line.substring(indent);
-				String[] parts = line.split(" ");
+				int length = split(line, indent, parts);
 
 				switch (parts[0]) {
 				case "CLASS":
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+					if (length < 2 || length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
 					String obfName = parts[1];
 					if (indent >= 1) {//Inner classes have certain inconsistencies...
 						if (obfName.indexOf('/') > 0) {//Some inner classes carry the named outer class, others the obf'd outer class
@@ -97,7 +139,7 @@ public class EnigmaReader {
 					}
 					contextStack.add('C' + obfName);
 					indent++;
-					if (parts.length == 3) {
+					if (length == 3) {
 						String className;
 						if (indent > 1) {//If we're an indent in, we're an inner class so want the outer classes's name
 							String context = contextNamedStack.peek();
@@ -115,13 +157,13 @@ public class EnigmaReader {
 					}
 					break;
 				case "METHOD": {
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
-					if (!parts[parts.length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
+					if (length < 3 || length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+					if (!parts[length - 1].startsWith("(")) throw new IOException("invalid enigma line (invalid method desc): "+line);
 					String context = contextStack.peek();
 					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (method without class): "+line);
-					contextStack.add("M"+parts[1]+parts[parts.length - 1]);
+					contextStack.add("M"+parts[1]+parts[length - 1]);
 					indent++;
-					if (parts.length == 4) {
+					if (length == 4) {
 						mappingAcceptor.acceptMethod(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
 						contextNamedStack.add('M' + parts[2]);
 					} else {
@@ -131,7 +173,7 @@ public class EnigmaReader {
 				}
 				case "ARG":
 				case "VAR": {
-					if (parts.length < 2 || parts.length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+					if (length < 2 || length > 3) throw new IOException("invalid enigma line (missing/extra columns): "+line);
 					String methodContext = contextStack.poll();
 					if (methodContext == null || methodContext.charAt(0) != 'M') throw new IOException("invalid enigma line (arg without method): "+line);
 					String classContext = contextStack.peek();
@@ -141,7 +183,7 @@ public class EnigmaReader {
 					int index = Integer.parseInt(parts[1]);
 					boolean isArg = parts[0].equals("ARG");
 
-					if (parts.length == 3) {
+					if (length == 3) {
 						int methodDescStart = methodContext.indexOf('(');
 						assert methodDescStart != -1;
 
@@ -166,14 +208,14 @@ public class EnigmaReader {
 					break;
 				}
 				case "FIELD":
-					if (parts.length < 3 || parts.length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
+					if (length < 3 || length > 4) throw new IOException("invalid enigma line (missing/extra columns): "+line);
 					String context = contextStack.peek();
 					if (context == null || context.charAt(0) != 'C') throw new IOException("invalid enigma line (field without class): "+line);
 					assert parts[1].indexOf('#') < 0;
-					assert parts[parts.length - 1].indexOf('#') < 0;
-					contextStack.add('F' + parts[1] + '#' + parts[parts.length - 1]);
+					assert parts[length - 1].indexOf('#') < 0;
+					contextStack.add('F' + parts[1] + '#' + parts[length - 1]);
 					indent++;
-					if (parts.length == 4) {
+					if (length == 4) {
 						mappingAcceptor.acceptField(context.substring(1), parts[1], parts[3], contextNamedStack.peek().substring(1), parts[2], null);
 						contextNamedStack.add('F' + parts[2]);
 					} else {
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Field;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method;
+import net.fabricmc.loom.providers.mappings.MappingBlob.Mapping.Method.Arg;
+import net.fabricmc.loom.util.DeletingFileVisitor;
+import net.fabricmc.loom.util.RecentlyUsedFiles;
+
+/**
+ * Holds the contribution each layer of a mapping stack makes (after being renamed to Intermediary) keyed by the layer's contents,
+ * so changing one layer of a stack doesn't need every other layer to be loaded again. The least recently used layers are trimmed
+ * once the cache grows past {@link #MAX_SIZE}.
+ */
+public final class LayerCache {
+	private static final int MAGIC = 0x4C4C4159; //LLAY
+	private static final int VERSION = 2;
+	/** How big the cache for each Minecraft version can grow (in megabytes) before old layers are removed, can be set with {@code -Dfabric.loom.layerCacheSize=<MB>} */
+	public static final long MAX_SIZE = Long.getLong("fabric.loom.layerCacheSize", 256) * 1024 * 1024;
+	private final Path directory;
+
+	public LayerCache(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Make a key for the given layer of mappings for the given Minecraft version, renamed using the Intermediaries with the given
+	 * {@link MappingsIndex#hash(Path) hash} and (if natively named) specialised against a jar merged with the given strategy
+	 */
+	public static String key(Path layer, String minecraftVersion, byte[] intermediaries, String mergeStrategy) throws IOException {
+		return Hashing.sha256().newHasher().putInt(VERSION).putBytes(MappingsIndex.hash(layer)).putBytes(intermediaries)
+				.putString(mergeStrategy, StandardCharsets.UTF_8).hash() + "-" + minecraftVersion;
+	}
+
+	private Path pathFor(String key) {
+		return directory.resolve(key + ".layer");
+	}
+
+	/** Read the layer with the given key, or {@code null} if it is not in the cache (or can't be read) */
+	public MappingBlob read(String key) throws IOException {
+		Path file = pathFor(key);
+		if (Files.notExists(file)) return null;
+
+		RecentlyUsedFiles.touch(file);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			MappingBlob blob = MappingBlob.create();
+
+			for (int classes = in.readInt(); classes > 0; classes--) {
+				String className = readString(in);
+				blob.acceptClass(className, readString(in));
+				blob.acceptClassComment(className, readString(in));
+
+				for (int methods = in.readInt(); methods > 0; methods--) {
+					String name = readString(in);
+					String desc = readString(in);
+					blob.acceptMethod(className, name, desc, null, readString(in), readString(in));
+					blob.acceptMethodComment(className, name, desc, readString(in));
+
+					for (int arg = 0, args = in.readInt(); arg < args; arg++) {
+						String argName = readString(in);
+						if (argName != null) blob.acceptMethodArg(className, name, desc, arg, argName);
+						String argComment = readString(in);
+						if (argComment != null) blob.acceptMethodArgComment(className, name, desc, arg, argComment);
+					}
+				}
+
+				for (int fields = in.readInt(); fields > 0; fields--) {
+					String name = readString(in);
+					String desc = readString(in);
+					blob.acceptField(className, name, desc, null, readString(in), readString(in));
+					blob.acceptFieldComment(className, name, desc, readString(in));
+				}
+			}
+
+			return blob;
+		} catch (EOFException e) {
+			return null; //Probably didn't get finished being written
+		}
+	}
+
+	/** Save the given layer under the given key, replacing anything already there */
+	public void write(String key, MappingBlob blob) throws IOException {
+		Files.createDirectories(directory);
+		Path file = pathFor(key);
+
+		Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				out.writeInt(Iterables.size(blob));
+				for (Mapping mapping : blob) {
+					writeString(out, mapping.from);
+					writeString(out, mapping.to());
+					writeString(out, mapping.comment().orElse(null));
+
+					out.writeInt(Iterables.size(mapping.methods()));
+					for (Method method : mapping.methods()) {
+						writeString(out, method.fromName);
+						writeString(out, method.fromDesc);
+						writeString(out, method.name());
+						writeString(out, method.desc());
+						writeString(out, method.comment().orElse(null));
+
+						Arg[] args = method.cloneArgs();
+						out.writeInt(args.length);
+						for (Arg arg : args) {
+							writeString(out, arg != null ? arg.name : null);
+							writeString(out, arg != null ? arg.comment : null);
+						}
+					}
+
+					out.writeInt(Iterables.size(mapping.fields()));
+					for (Field field : mapping.fields()) {
+						writeString(out, field.fromName);
+						writeString(out, field.fromDesc);
+						writeString(out, field.name());
+						writeString(out, field.desc());
+						writeString(out, field.comment().orElse(null));
+					}
+				}
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Remove the least recently used layers until those left take up no more than the given number of bytes, returning how many were removed */
+	public int collectGarbage(long maxSize) throws IOException {
+		return RecentlyUsedFiles.trim(directory, ".layer", maxSize);
+	}
+
+	/** Remove every cached layer */
+	public void clear() throws IOException {
+		if (Files.exists(directory)) {
+			Files.walkFileTree(directory, new DeletingFileVisitor());
+		}
+	}
+}
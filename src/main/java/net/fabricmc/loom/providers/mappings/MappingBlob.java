@@ -15,6 +15,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.function.ObjIntConsumer;
 import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
@@ -36,7 +37,8 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			static class Arg {
 				String name, comment;
 			}
-			private Arg[] args = new Arg[0];
+			private static final Arg[] NO_ARGS = new Arg[0];
+			private Arg[] args = NO_ARGS;
 
 			public Method(String fromName, String fromDesc) {
 				super(fromName, fromDesc);
@@ -94,43 +96,27 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			}
 
 			void cloneArgs(Method method) {
-				if (method.args.length > args.length) args = new Arg[method.args.length];
-
-				for (int i = 0; i < method.args.length; i++) {
-					Arg arg = method.args[i];
-					if (arg == null) continue;
-
-					Arg clone = args[i] == null ? args[i] = new Arg() : args[i];
-					clone.name = arg.name;
-					clone.comment = arg.comment;
-				}
+				//Go through the public view of the arguments as the given method might not be stored the same way
+				method.iterateArgs(this::addArg);
+				method.iterateArgComments((comment, index) -> addArgComment(index, comment));
 			}
 
 			Arg[] extendArgs(Method that) {
-				Arg[] args = new Arg[Math.max(this.args.length, that.args.length)];
-
-				Arg[] shorter = args.length == this.args.length ? that.args : this.args;
-				assert shorter.length == Math.min(this.args.length, that.args.length);
-				Arg[] longer = shorter == this.args ? that.args : this.args;
-				assert longer.length == args.length;
-
-				for (int i = 0; i < shorter.length; i++) {
-					Arg existing = this.args[i];
-					Arg other = that.args[i];
-					if (existing == null && other == null) continue; //Neither have a suggestion
-
-					Arg clone = args[i] = new Arg();
-					clone.name = existing != null && existing.name != null ? existing.name : other != null ? other.name : null;
-					clone.comment = existing != null && existing.comment != null ? existing.comment : other != null ? other.comment : null;
-				}
-
-				for (int i = shorter.length; i < longer.length; i++) {
-					Arg only = longer[i];
-					if (only == null) continue;
-
-					Arg clone = args[i] = new Arg();
-					clone.name = only.name;
-					clone.comment = only.comment;
+				Arg[] args = cloneArgs();
+				Arg[] others = that.cloneArgs();
+				if (others.length > args.length) args = Arrays.copyOf(args, others.length);
+
+				for (int i = 0; i < others.length; i++) {
+					Arg other = others[i];
+					if (other == null) continue; //No suggestion to add
+
+					Arg existing = args[i];
+					if (existing == null) {
+						args[i] = other;
+					} else {
+						if (existing.name == null) existing.name = other.name;
+						if (existing.comment == null) existing.comment = other.comment;
+					}
 				}
 
 				return args;
@@ -158,8 +144,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 		public static class Field {
 			public final String fromName, fromDesc;
-			private String toName, toDesc;
-			String comment;
+			private String toName, toDesc, comment;
 
 			public Field(String fromName, String fromDesc) {
 				this.fromName = fromName;
@@ -171,12 +156,17 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 				this.toDesc = desc;
 			}
 
+			void setComment(String comment) {
+				this.comment = comment;
+			}
+
 			public String name() {
 				return toName;
 			}
 
 			public String nameOr(String alternative) {
-				return toName != null ? toName : alternative;
+				String name = name();
+				return name != null ? name : alternative;
 			}
 
 			public String desc() {
@@ -184,7 +174,8 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 			}
 
 			public String desc(UnaryOperator<String> remapper) {
-				return toDesc != null ? toDesc : remapDesc(fromDesc, remapper);
+				String desc = desc();
+				return desc != null ? desc : remapDesc(fromDesc, remapper);
 			}
 
 			public Optional<String> comment() {
@@ -199,11 +190,17 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		public final String from;
 		String to;
 		String comment;
-		final Map<String, Method> methods = new HashMap<>();
-		final Map<String, Field> fields = new HashMap<>();
+		final Map<String, Method> methods;
+		final Map<String, Field> fields;
 
 		public Mapping(String from) {
+			this(from, new HashMap<>(), new HashMap<>());
+		}
+
+		Mapping(String from, Map<String, Method> methods, Map<String, Field> fields) {
 			this.from = from;
+			this.methods = methods;
+			this.fields = fields;
 		}
 
 		public String to() {
@@ -291,14 +288,50 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		}
 	}
 
+	/** Whether {@link #create()} makes {@link #compact()} blobs, can be set with {@code -Dfabric.loom.compactMappings=true} */
+	private static final boolean COMPACT = Boolean.getBoolean("fabric.loom.compactMappings");
 	private final Map<String, Mapping> mappings = new HashMap<>();
+	private final StringPool pool;
+	private final Function<String, Mapping> mappingFactory;
+
+	public MappingBlob() {
+		this(null);
+	}
+
+	private MappingBlob(StringPool pool) {
+		this.pool = pool;
+		mappingFactory = pool == null ? Mapping::new : name -> new CompactMapping(name, pool);
+	}
+
+	/**
+	 * Make a blob which interns all the names and descriptors it is given into a shared pool, and stores the members of each class
+	 * in flat tables rather than as individual objects. This is slower to update but takes far less memory for large sets of mappings.
+	 */
+	public static MappingBlob compact() {
+		return new MappingBlob(new StringPool());
+	}
+
+	/** Make a new blob, which will be {@link #compact()} if {@code fabric.loom.compactMappings} is set */
+	public static MappingBlob create() {
+		return COMPACT ? compact() : new MappingBlob();
+	}
+
+	private MappingBlob derive() {
+		return new MappingBlob(pool);
+	}
+
+	private String intern(String name) {
+		return pool != null ? pool.intern(name) : name;
+	}
 
 	public boolean has(String srcName) {
 		return mappings.containsKey(srcName);
 	}
 
 	public Mapping get(String srcName) {
-		return mappings.computeIfAbsent(srcName, Mapping::new);
+		Mapping mapping = mappings.get(srcName);
+		if (mapping == null) mappings.put(srcName = intern(srcName), mapping = mappingFactory.apply(srcName));
+		return mapping;
 	}
 
 	public Mapping getOrDummy(String srcName) {
@@ -313,7 +346,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptClass(String srcName, String dstName) {
-		get(srcName).to = dstName;
+		get(srcName).to = intern(dstName);
 	}
 
 	@Override
@@ -328,7 +361,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptMethodComment(String className, String methodName, String desc, String comment) {
-		get(className).method(methodName, desc).comment = comment;
+		get(className).method(methodName, desc).setComment(comment);
 	}
 
 	@Override
@@ -348,7 +381,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 	@Override
 	public void acceptFieldComment(String className, String fieldName, String desc, String comment) {
-		get(className).field(fieldName, desc).comment = comment;
+		get(className).field(fieldName, desc).setComment(comment);
 	}
 
 	@Override
@@ -376,13 +409,37 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 		return mappings.values().stream().flatMap(Mapping::methodStream).anyMatch(Method::hasArgNames);
 	}
 
+	/** Pass everything in the blob on to the given acceptor */
+	public void copyTo(IMappingAcceptor acceptor) {
+		for (Mapping mapping : mappings.values()) {
+			String to = mapping.toOr(mapping.from);
+			if (mapping.to != null) acceptor.acceptClass(mapping.from, mapping.to);
+			if (mapping.comment != null) acceptor.acceptClassComment(mapping.from, mapping.comment);
+
+			for (Method method : mapping.methods()) {
+				//Constructors are named when they're made so don't need passing on
+				if (method.name() != null && method.fromName.charAt(0) != '<') {
+					acceptor.acceptMethod(mapping.from, method.fromName, method.fromDesc, to, method.name(), method.desc());
+				}
+				method.comment().ifPresent(comment -> acceptor.acceptMethodComment(mapping.from, method.fromName, method.fromDesc, comment));
+				method.iterateArgs((index, arg) -> acceptor.acceptMethodArg(mapping.from, method.fromName, method.fromDesc, index, arg));
+				method.iterateArgComments((comment, index) -> acceptor.acceptMethodArgComment(mapping.from, method.fromName, method.fromDesc, index, comment));
+			}
+
+			for (Field field : mapping.fields()) {
+				if (field.name() != null) acceptor.acceptField(mapping.from, field.fromName, field.fromDesc, to, field.name(), field.desc());
+				field.comment().ifPresent(comment -> acceptor.acceptFieldComment(mapping.from, field.fromName, field.fromDesc, comment));
+			}
+		}
+	}
+
 	public enum InvertionTarget {
 		FIELDS, METHODS, MEMBERS, METHOD_ARGS, ALL;
 	}
 
 	public MappingBlob invert(InvertionTarget... targets) {
 		Set<InvertionTarget> aims = EnumSet.noneOf(InvertionTarget.class);
-		MappingBlob invertion = new MappingBlob();
+		MappingBlob invertion = derive();
 
 		for (InvertionTarget target : targets) {
 			switch (target) {
@@ -428,7 +485,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 					String desc = field.desc(classRemapper);
 					invertion.acceptField(mapping.to, field.name(), desc, mapping.from, field.fromName, field.fromDesc);
-					invertion.acceptFieldComment(mapping.to, field.name(), desc, field.comment);
+					invertion.acceptFieldComment(mapping.to, field.name(), desc, field.comment().orElse(null));
 				}
 			}
 
@@ -439,7 +496,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 					String desc = method.desc(classRemapper);
 					invertion.acceptMethod(mapping.to, method.name(), desc, mapping.from, method.fromName, method.fromDesc);
-					invertion.acceptMethodComment(mapping.to, method.name(), desc, method.comment);
+					invertion.acceptMethodComment(mapping.to, method.name(), desc, method.comment().orElse(null));
 					if (doArgs) invertion.get(mapping.to).method(method.name(), desc).cloneArgs(method);
 				}
 			}
@@ -449,7 +506,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 	}
 
 	public MappingBlob rename(MappingBlob blob) {
-		MappingBlob remap = new MappingBlob();
+		MappingBlob remap = derive();
 
 		UnaryOperator<String> classRemapper = name -> {
 			String mapping = blob.tryMapName(name);
@@ -471,14 +528,14 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					if (bridged.name() != null) {
 						assert bridged.desc() != null;
 						remap.acceptField(className, bridged.name(), bridged.desc(), mapping.to, field.name(), field.desc());
-						remap.acceptFieldComment(className, bridged.name(), bridged.desc(), field.comment);
+						remap.acceptFieldComment(className, bridged.name(), bridged.desc(), field.comment().orElse(null));
 						continue;
 					}
 				}
 
 				String desc = remapDesc(field.fromDesc, classRemapper);
 				remap.acceptField(className, field.fromName, desc, mapping.to, field.name(), field.desc());
-				remap.acceptFieldComment(className, field.fromName, desc, field.comment);
+				remap.acceptFieldComment(className, field.fromName, desc, field.comment().orElse(null));
 			}
 
 			for (Method method : mapping.methods()) {
@@ -488,7 +545,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 					if (bridged.name() != null) {
 						assert bridged.desc() != null;
 						remap.acceptMethod(className, bridged.name(), bridged.desc(), mapping.to, method.name(), method.desc());
-						remap.acceptMethodComment(className, bridged.name(), bridged.desc(), method.comment);
+						remap.acceptMethodComment(className, bridged.name(), bridged.desc(), method.comment().orElse(null));
 						remap.get(className).method(bridged.name(), bridged.desc()).cloneArgs(method);
 						continue;
 					}
@@ -496,7 +553,7 @@ public class MappingBlob implements IMappingAcceptor, Iterable<Mapping> {
 
 				String desc = remapDesc(method.fromDesc, classRemapper);
 				remap.acceptMethod(className, method.fromName, desc, mapping.to, method.name(), method.desc());
-				remap.acceptMethodComment(className, method.fromName, desc, method.comment);
+				remap.acceptMethodComment(className, method.fromName, desc, method.comment().orElse(null));
 				remap.get(className).method(method.fromName, desc).cloneArgs(method);
 			}
 		}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.primitives.UnsignedBytes;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import net.fabricmc.loom.util.OperatingSystem;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MappingsProvider;
+import net.fabricmc.mappings.MethodEntry;
+
+/**
+ * A compact binary form of a tiny file which can be memory mapped and queried without parsing the original file.
+ *
+ * <p>All the names are interned into a single string table sorted by their UTF-8 bytes, so string IDs can be compared
+ * instead of the strings themselves. Each namespace then gets an ordering of the class, method and field tables
+ * sorted by name (and owner then descriptor for members) in that namespace, allowing lookups via a binary search.
+ */
+public final class MappingsIndex implements Mappings {
+	private static final int MAGIC = 0x4C4D4958; //LMIX
+	private static final int VERSION = 1;
+	private static final int HASH_LENGTH = 32;
+	private static final int HEADER_LENGTH = 8 + HASH_LENGTH + 6 * 4;
+	private static final int NULL = -1;
+	/**
+	 * Whether to memory map indexes rather than reading them onto the heap. Windows won't let a mapped file be replaced or deleted until
+	 * the mapping is garbage collected, which would stop stale indexes being rebuilt or cleared, so they are only read there.
+	 */
+	private static final boolean MAP_INDEXES = OperatingSystem.ACTIVE != OperatingSystem.WINDOWS;
+	private static final Logger LOGGER = Logging.getLogger(MappingsIndex.class);
+
+	private final ByteBuffer buffer;
+	private final String[] namespaces;
+	private final int stringCount, classCount, methodCount, fieldCount;
+	private final int stringOffsets, stringData, classes, classOrder, methods, methodOrder, fields, fieldOrder;
+
+	private MappingsIndex(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Invalid mappings index header");
+		}
+
+		int namespaceCount = buffer.getInt(8 + HASH_LENGTH);
+		stringCount = buffer.getInt(12 + HASH_LENGTH);
+		int stringDataLength = buffer.getInt(16 + HASH_LENGTH);
+		classCount = buffer.getInt(20 + HASH_LENGTH);
+		methodCount = buffer.getInt(24 + HASH_LENGTH);
+		fieldCount = buffer.getInt(28 + HASH_LENGTH);
+
+		int position = HEADER_LENGTH + namespaceCount * 4;
+		stringOffsets = position;
+		position += (stringCount + 1) * 4;
+		stringData = position;
+		position += align(stringDataLength);
+		classes = position;
+		position += classCount * namespaceCount * 4;
+		classOrder = position;
+		position += classCount * namespaceCount * 4;
+		methods = position;
+		position += methodCount * namespaceCount * 3 * 4;
+		methodOrder = position;
+		position += methodCount * namespaceCount * 4;
+		fields = position;
+		position += fieldCount * namespaceCount * 3 * 4;
+		fieldOrder = position;
+		position += fieldCount * namespaceCount * 4;
+
+		if (position != buffer.capacity()) {
+			throw new IOException("Mappings index is the wrong length, expected " + position + " but was " + buffer.capacity());
+		}
+
+		namespaces = new String[namespaceCount];
+		for (int i = 0; i < namespaceCount; i++) {
+			namespaces[i] = string(buffer.getInt(HEADER_LENGTH + i * 4));
+		}
+	}
+
+	public static Path indexFor(Path mappings) {
+		return mappings.resolveSibling(mappings.getFileName() + ".index");
+	}
+
+	/** The hash of the given tiny file's contents, as the index for it is keyed by */
+	public static byte[] hash(Path mappings) throws IOException {
+		return MoreFiles.asByteSource(mappings).hash(Hashing.sha256()).asBytes();
+	}
+
+	/** Load the index for the given tiny file, (re)building it if it is missing or was made from a different file */
+	public static MappingsIndex load(Path mappings) throws IOException {
+		return load(mappings, hash(mappings));
+	}
+
+	/** As {@link #load(Path)}, but using an already known {@link #hash(Path) hash} of the tiny file */
+	public static MappingsIndex load(Path mappings, byte[] hash) throws IOException {
+		Path indexFile = indexFor(mappings);
+
+		if (Files.exists(indexFile)) {
+			try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+				//Only map the index once it's known to be the right one, otherwise it would stop the file being replaced on Windows
+				if (hasHash(readFully(channel, HEADER_LENGTH), hash)) {
+					return new MappingsIndex(MAP_INDEXES ? channel.map(MapMode.READ_ONLY, 0, channel.size()) : readFully(channel, Math.toIntExact(channel.size())));
+				}
+			} catch (IOException | ArithmeticException e) {
+				LOGGER.debug("Unable to read mappings index " + indexFile + ", rebuilding it", e);
+			}
+		}
+
+		Mappings parsed;
+		try (InputStream in = Files.newInputStream(mappings)) {
+			parsed = MappingsProvider.readTinyMappings(in, false);
+		}
+
+		byte[] index = write(parsed, hash);
+		try {
+			Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temp, index);
+				Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		} catch (IOException e) {//Not the end of the world, the index can be rebuilt again next time
+			LOGGER.warn("Unable to save mappings index to " + indexFile + ", it will have to be rebuilt next time", e);
+		}
+
+		return new MappingsIndex(ByteBuffer.wrap(index));
+	}
+
+	/** Read the given number of bytes from the start of the given channel into a heap buffer */
+	private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(length);
+
+		while (out.hasRemaining()) {
+			if (channel.read(out, out.position()) < 0) throw new EOFException("Expected " + length + " bytes but only found " + out.position());
+		}
+
+		return out;
+	}
+
+	private static boolean hasHash(ByteBuffer buffer, byte[] hash) {
+		if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return false;
+
+		for (int i = 0; i < HASH_LENGTH; i++) {
+			if (buffer.get(8 + i) != hash[i]) return false;
+		}
+
+		return true;
+	}
+
+	private static int align(int length) {
+		return (length + 3) & ~3;
+	}
+
+	static byte[] write(Mappings mappings, byte[] hash) {
+		assert hash.length == HASH_LENGTH;
+		String[] namespaces = mappings.getNamespaces().toArray(new String[0]);
+		ClassEntry[] classEntries = mappings.getClassEntries().toArray(new ClassEntry[0]);
+		MethodEntry[] methodEntries = mappings.getMethodEntries().toArray(new MethodEntry[0]);
+		FieldEntry[] fieldEntries = mappings.getFieldEntries().toArray(new FieldEntry[0]);
+
+		Map<String, byte[]> pool = new HashMap<>();
+		for (String namespace : namespaces) {
+			intern(pool, namespace);
+
+			for (ClassEntry entry : classEntries) {
+				intern(pool, entry.get(namespace));
+			}
+
+			for (MethodEntry entry : methodEntries) {
+				intern(pool, entry.get(namespace));
+			}
+
+			for (FieldEntry entry : fieldEntries) {
+				intern(pool, entry.get(namespace));
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		Map.Entry<String, byte[]>[] strings = pool.entrySet().toArray(new Map.Entry[0]);
+		Arrays.sort(strings, Comparator.comparing(Map.Entry::getValue, UnsignedBytes.lexicographicalComparator()));
+		Map<String, Integer> ids = new HashMap<>(strings.length);
+		int stringDataLength = 0;
+		for (int i = 0; i < strings.length; i++) {
+			ids.put(strings[i].getKey(), i);
+			stringDataLength += strings[i].getValue().length;
+		}
+
+		int ns = namespaces.length;
+		int[] classes = new int[classEntries.length * ns];
+		for (int i = 0, j = 0; i < classEntries.length; i++) {
+			for (String namespace : namespaces) {
+				classes[j++] = id(ids, classEntries[i].get(namespace));
+			}
+		}
+
+		int[] methods = new int[methodEntries.length * ns * 3];
+		for (int i = 0, j = 0; i < methodEntries.length; i++) {
+			for (String namespace : namespaces) {
+				j = writeTriple(methods, j, ids, methodEntries[i].get(namespace));
+			}
+		}
+
+		int[] fields = new int[fieldEntries.length * ns * 3];
+		for (int i = 0, j = 0; i < fieldEntries.length; i++) {
+			for (String namespace : namespaces) {
+				j = writeTriple(fields, j, ids, fieldEntries[i].get(namespace));
+			}
+		}
+
+		int length = HEADER_LENGTH + ns * 4 + (strings.length + 1) * 4 + align(stringDataLength)
+				+ classes.length * 4 + classEntries.length * ns * 4
+				+ methods.length * 4 + methodEntries.length * ns * 4
+				+ fields.length * 4 + fieldEntries.length * ns * 4;
+		ByteBuffer out = ByteBuffer.allocate(length);
+
+		out.putInt(MAGIC).putInt(VERSION).put(hash);
+		out.putInt(ns).putInt(strings.length).putInt(stringDataLength);
+		out.putInt(classEntries.length).putInt(methodEntries.length).putInt(fieldEntries.length);
+
+		for (String namespace : namespaces) {
+			out.putInt(ids.get(namespace));
+		}
+
+		int offset = 0;
+		for (Map.Entry<String, byte[]> string : strings) {
+			out.putInt(offset);
+			offset += string.getValue().length;
+		}
+		out.putInt(offset);
+
+		for (Map.Entry<String, byte[]> string : strings) {
+			out.put(string.getValue());
+		}
+		for (int i = align(stringDataLength) - stringDataLength; i > 0; i--) {
+			out.put((byte) 0);
+		}
+
+		putAll(out, classes);
+		for (int column = 0; column < ns; column++) {
+			putAll(out, order(classEntries.length, ns, 1, column, classes));
+		}
+
+		putAll(out, methods);
+		for (int column = 0; column < ns; column++) {
+			putAll(out, order(methodEntries.length, ns, 3, column, methods));
+		}
+
+		putAll(out, fields);
+		for (int column = 0; column < ns; column++) {
+			putAll(out, order(fieldEntries.length, ns, 3, column, fields));
+		}
+
+		assert !out.hasRemaining();
+		return out.array();
+	}
+
+	private static void intern(Map<String, byte[]> pool, String name) {
+		if (name != null && !pool.containsKey(name)) pool.put(name, name.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void intern(Map<String, byte[]> pool, EntryTriple triple) {
+		if (triple != null) {
+			intern(pool, triple.getOwner());
+			intern(pool, triple.getName());
+			intern(pool, triple.getDesc());
+		}
+	}
+
+	private static int id(Map<String, Integer> ids, String name) {
+		return name != null ? ids.get(name) : NULL;
+	}
+
+	private static int writeTriple(int[] table, int index, Map<String, Integer> ids, EntryTriple triple) {
+		if (triple != null) {
+			table[index++] = id(ids, triple.getOwner());
+			table[index++] = id(ids, triple.getName());
+			table[index++] = id(ids, triple.getDesc());
+		} else {
+			table[index++] = NULL;
+			table[index++] = NULL;
+			table[index++] = NULL;
+		}
+
+		return index;
+	}
+
+	private static int[] order(int count, int ns, int width, int column, int[] table) {
+		int stride = ns * width;
+
+		return IntStream.range(0, count).boxed().sorted((a, b) -> {
+			int aStart = a * stride + column * width;
+			int bStart = b * stride + column * width;
+
+			for (int i = 0; i < width; i++) {
+				int compare = Integer.compare(table[aStart + i], table[bStart + i]);
+				if (compare != 0) return compare;
+			}
+
+			return 0;
+		}).mapToInt(Integer::intValue).toArray();
+	}
+
+	private static void putAll(ByteBuffer out, int[] values) {
+		for (int value : values) {
+			out.putInt(value);
+		}
+	}
+
+	private String string(int id) {
+		if (id == NULL) return null;
+
+		int start = buffer.getInt(stringOffsets + id * 4);
+		int end = buffer.getInt(stringOffsets + (id + 1) * 4);
+		byte[] bytes = new byte[end - start];
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(stringData + start + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int compareString(int id, byte[] target) {
+		int start = buffer.getInt(stringOffsets + id * 4);
+		int length = buffer.getInt(stringOffsets + (id + 1) * 4) - start;
+
+		for (int i = 0, end = Math.min(length, target.length); i < end; i++) {
+			int compare = UnsignedBytes.compare(buffer.get(stringData + start + i), target[i]);
+			if (compare != 0) return compare;
+		}
+
+		return length - target.length;
+	}
+
+	private int findString(String name) {
+		if (name == null) return NULL;
+		byte[] target = name.getBytes(StandardCharsets.UTF_8);
+
+		for (int low = 0, high = stringCount - 1; low <= high;) {
+			int middle = (low + high) >>> 1;
+			int compare = compareString(middle, target);
+
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+
+		return NULL;
+	}
+
+	private int column(String namespace) {
+		for (int i = 0; i < namespaces.length; i++) {
+			if (namespaces[i].equals(namespace)) return i;
+		}
+
+		return NULL;
+	}
+
+	private int search(int table, int order, int count, int width, int column, int... target) {
+		int stride = namespaces.length * width;
+
+		for (int low = 0, high = count - 1; low <= high;) {
+			int middle = (low + high) >>> 1;
+			int entry = buffer.getInt(order + (column * count + middle) * 4);
+			int start = table + (entry * stride + column * width) * 4;
+
+			int compare = 0;
+			for (int i = 0; i < width && compare == 0; i++) {
+				compare = Integer.compare(buffer.getInt(start + i * 4), target[i]);
+			}
+
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return entry;
+			}
+		}
+
+		return NULL;
+	}
+
+	/** Find the index of the class with the given name in the given namespace, or {@code -1} if there is no such class */
+	public int findClass(String namespace, String name) {
+		int column = column(namespace);
+		int id = findString(name);
+		if (column == NULL || id == NULL) return NULL;
+
+		return search(classes, classOrder, classCount, 1, column, id);
+	}
+
+	public String getClassName(int index, String namespace) {
+		Preconditions.checkElementIndex(index, classCount);
+		int column = column(namespace);
+		return column != NULL ? string(buffer.getInt(classes + (index * namespaces.length + column) * 4)) : null;
+	}
+
+	private int findMember(int table, int order, int count, String namespace, String owner, String name, String desc) {
+		int column = column(namespace);
+		if (column == NULL) return NULL;
+
+		int ownerID = findString(owner);
+		int nameID = findString(name);
+		int descID = findString(desc);
+		if (ownerID == NULL || nameID == NULL || descID == NULL) return NULL;
+
+		return search(table, order, count, 3, column, ownerID, nameID, descID);
+	}
+
+	private EntryTriple getMember(int table, int index, String namespace) {
+		int column = column(namespace);
+		if (column == NULL) return null;
+
+		int start = table + (index * namespaces.length + column) * 3 * 4;
+		int owner = buffer.getInt(start);
+		if (owner == NULL) return null;
+
+		return new EntryTriple(string(owner), string(buffer.getInt(start + 4)), string(buffer.getInt(start + 8)));
+	}
+
+	/** Find the index of the method with the given owner, name and descriptor in the given namespace, or {@code -1} if there is no such method */
+	public int findMethod(String namespace, String owner, String name, String desc) {
+		return findMember(methods, methodOrder, methodCount, namespace, owner, name, desc);
+	}
+
+	public EntryTriple getMethod(int index, String namespace) {
+		Preconditions.checkElementIndex(index, methodCount);
+		return getMember(methods, index, namespace);
+	}
+
+	/** Find the index of the field with the given owner, name and descriptor in the given namespace, or {@code -1} if there is no such field */
+	public int findField(String namespace, String owner, String name, String desc) {
+		return findMember(fields, fieldOrder, fieldCount, namespace, owner, name, desc);
+	}
+
+	public EntryTriple getField(int index, String namespace) {
+		Preconditions.checkElementIndex(index, fieldCount);
+		return getMember(fields, index, namespace);
+	}
+
+	/** The size of the index in bytes, whether on or off the heap */
+	public int byteSize() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public Collection<String> getNamespaces() {
+		return Collections.unmodifiableList(Arrays.asList(namespaces));
+	}
+
+	@Override
+	public Collection<ClassEntry> getClassEntries() {
+		return new AbstractList<ClassEntry>() {
+			@Override
+			public ClassEntry get(int index) {
+				Preconditions.checkElementIndex(index, classCount);
+				return namespace -> getClassName(index, namespace);
+			}
+
+			@Override
+			public int size() {
+				return classCount;
+			}
+		};
+	}
+
+	@Override
+	public Collection<MethodEntry> getMethodEntries() {
+		return new AbstractList<MethodEntry>() {
+			@Override
+			public MethodEntry get(int index) {
+				Preconditions.checkElementIndex(index, methodCount);
+				return namespace -> getMember(methods, index, namespace);
+			}
+
+			@Override
+			public int size() {
+				return methodCount;
+			}
+		};
+	}
+
+	@Override
+	public Collection<FieldEntry> getFieldEntries() {
+		return new AbstractList<FieldEntry>() {
+			@Override
+			public FieldEntry get(int index) {
+				Preconditions.checkElementIndex(index, fieldCount);
+				return namespace -> getMember(fields, index, namespace);
+			}
+
+			@Override
+			public int size() {
+				return fieldCount;
+			}
+		};
+	}
+}
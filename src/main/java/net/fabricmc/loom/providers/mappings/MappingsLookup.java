@@ -0,0 +1,108 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import net.fabricmc.mappings.ClassEntry;
+import net.fabricmc.mappings.EntryTriple;
+import net.fabricmc.mappings.FieldEntry;
+import net.fabricmc.mappings.Mappings;
+import net.fabricmc.mappings.MethodEntry;
+
+/**
+ * Indexes over a set of {@link Mappings} by namespace, so classes can be found by name and members by owner (or name) without
+ * scanning through every entry. Each index is only built the first time it is asked for, then shared by everything using the same mappings.
+ */
+public final class MappingsLookup {
+	/** The lookups already made for each set of mappings, held weakly so they go when the mappings do */
+	private static final Cache<Mappings, MappingsLookup> LOOKUPS = CacheBuilder.newBuilder().weakKeys().build();
+	private final Mappings mappings;
+	private final Map<String, Map<String, ClassEntry>> classes = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, List<MethodEntry>>> methodsByOwner = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, List<FieldEntry>>> fieldsByOwner = new ConcurrentHashMap<>();
+	private final Map<String, Map<String, List<FieldEntry>>> fieldsByName = new ConcurrentHashMap<>();
+
+	private MappingsLookup(Mappings mappings) {
+		this.mappings = mappings;
+	}
+
+	/** Get the lookup for the given mappings, which will be shared with any other callers for the same instance */
+	public static MappingsLookup of(Mappings mappings) {
+		return LOOKUPS.asMap().computeIfAbsent(mappings, MappingsLookup::new);
+	}
+
+	public Mappings getMappings() {
+		return mappings;
+	}
+
+	private Map<String, ClassEntry> classes(String namespace) {
+		return classes.computeIfAbsent(namespace, k -> {
+			Map<String, ClassEntry> out = new HashMap<>();
+
+			for (ClassEntry entry : mappings.getClassEntries()) {
+				String name = entry.get(namespace);
+				if (name != null) out.putIfAbsent(name, entry);
+			}
+
+			return out;
+		});
+	}
+
+	/** Find the class with the given name in the given namespace, or {@code null} if there isn't one */
+	public ClassEntry getClass(String namespace, String name) {
+		return classes(namespace).get(name);
+	}
+
+	/** Map the given class name from one namespace to another, or {@code null} if the class isn't in the mappings */
+	public String mapClass(String name, String from, String to) {
+		ClassEntry entry = getClass(from, name);
+		return entry != null ? entry.get(to) : null;
+	}
+
+	private static <T> Map<String, List<T>> group(Iterable<T> entries, Function<T, EntryTriple> namer, Function<EntryTriple, String> key) {
+		Map<String, List<T>> out = new HashMap<>();
+
+		for (T entry : entries) {
+			EntryTriple triple = namer.apply(entry);
+			if (triple != null) out.computeIfAbsent(key.apply(triple), k -> new ArrayList<>()).add(entry);
+		}
+
+		return out;
+	}
+
+	/** Get all the methods owned by the given class in the given namespace */
+	public List<MethodEntry> getMethods(String namespace, String owner) {
+		return methodsByOwner.computeIfAbsent(namespace, k -> {
+			return group(mappings.getMethodEntries(), entry -> entry.get(namespace), EntryTriple::getOwner);
+		}).getOrDefault(owner, Collections.emptyList());
+	}
+
+	/** Get all the fields owned by the given class in the given namespace */
+	public List<FieldEntry> getFields(String namespace, String owner) {
+		return fieldsByOwner.computeIfAbsent(namespace, k -> {
+			return group(mappings.getFieldEntries(), entry -> entry.get(namespace), EntryTriple::getOwner);
+		}).getOrDefault(owner, Collections.emptyList());
+	}
+
+	/** Get all the fields with the given name in the given namespace, regardless of which class owns them */
+	public List<FieldEntry> getFieldsNamed(String namespace, String name) {
+		return fieldsByName.computeIfAbsent(namespace, k -> {
+			return group(mappings.getFieldEntries(), entry -> entry.get(namespace), EntryTriple::getName);
+		}).getOrDefault(name, Collections.emptyList());
+	}
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.providers.mappings;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A set of strings which can be shared between {@link MappingBlob}s so each distinct name or descriptor is only held once */
+final class StringPool {
+	private final Map<String, String> pool = new ConcurrentHashMap<>();
+
+	public String intern(String value) {
+		if (value == null) return null;
+
+		String existing = pool.putIfAbsent(value, value);
+		return existing != null ? existing : value;
+	}
+
+	public int size() {
+		return pool.size();
+	}
+}
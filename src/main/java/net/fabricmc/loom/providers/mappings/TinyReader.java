@@ -27,13 +27,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -52,13 +54,6 @@ import net.fabricmc.mappings.FieldEntry;
 import net.fabricmc.mappings.Mappings;
 import net.fabricmc.mappings.MappingsProvider;
 import net.fabricmc.mappings.MethodEntry;
-import net.fabricmc.mappings.TinyV2Visitor;
-import net.fabricmc.mappings.visitor.ClassVisitor;
-import net.fabricmc.mappings.visitor.FieldVisitor;
-import net.fabricmc.mappings.visitor.LocalVisitor;
-import net.fabricmc.mappings.visitor.MappingsVisitor;
-import net.fabricmc.mappings.visitor.MethodVisitor;
-import net.fabricmc.mappings.visitor.ParameterVisitor;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.TinyUtils;
 
@@ -119,141 +114,453 @@ public class TinyReader {
 		}
 	}
 
-	public static Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> readTiny(Path file, String commonNamespace) throws IOException {
-		try (InputStream in = getMappingStream(file)) {
-			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+	/** A destination for names (or comments) from {@link TinyReader#readTiny(Path, Target...)} */
+	public static final class Target {
+		final String from, to;
+		final IMappingAcceptor acceptor;
+		final Path copy;
+
+		private Target(String from, String to, IMappingAcceptor acceptor) {
+			this.from = from;
+			this.to = to;
+			this.acceptor = acceptor;
+			copy = null;
+		}
 
-			if (!mappings.getNamespaces().contains(commonNamespace)) {
-				throw new IllegalArgumentException("Namespace " + commonNamespace + " not found in " + file);
-			}
+		private Target(Path copy) {
+			from = to = null;
+			acceptor = null;
+			this.copy = copy;
+		}
 
-			Map<String, ? extends Set<MethodEntry>> methods = mappings.getMethodEntries().stream().collect(Collectors.groupingBy(method -> method.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
-			Map<String, ? extends Set<FieldEntry>> fields = mappings.getFieldEntries().stream().collect(Collectors.groupingBy(field -> field.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+		/** Pass the class, member and parameter names in the from column to the to column */
+		public static Target names(String from, String to, IMappingAcceptor acceptor) {
+			return new Target(from, to, acceptor);
+		}
 
-			Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> out = mappings.getClassEntries().stream().collect(Collectors.toMap(Function.identity(), entry -> {
-				String name = entry.get(commonNamespace);
+		/** Pass any comments, against their names in the given column */
+		public static Target comments(String column, IMappingAcceptor acceptor) {
+			return new Target(column, null, acceptor);
+		}
 
-				Set<MethodEntry> entryMethods = methods.remove(name);
-				Set<FieldEntry> entryFields = fields.remove(name);
-				return Pair.of(entryMethods != null ? entryMethods : Collections.emptySet(), entryFields != null ? entryFields : Collections.emptySet());
-			}));
+		/** Write every column out as a V1 file to the given path */
+		public static Target copy(Path to) {
+			return new Target(to);
+		}
 
-			for (Entry<String, ? extends Set<MethodEntry>> entry : methods.entrySet()) {
-				String className = entry.getKey();
+		boolean isComments() {
+			return to == null;
+		}
+	}
 
-				Set<FieldEntry> entryFields = fields.remove(className);
-				out.put(namespace -> className, Pair.of(entry.getValue(), entryFields != null ? entryFields : Collections.emptySet()));
-			}
+	private static class ClassLine {
+		final String[] names;
+		boolean implicit;
+		String comment;
+		final List<MemberLine> members = new ArrayList<>();
 
-			for (Entry<String, ? extends Set<FieldEntry>> entry : fields.entrySet()) {
-				String className = entry.getKey();
-				out.put(namespace -> className, Pair.of(Collections.emptySet(), entry.getValue()));
-			}
+		ClassLine(String[] names) {
+			this.names = names;
+		}
+	}
 
-			return out;
+	private static class MemberLine {
+		final boolean isMethod;
+		final String desc;
+		final String[] names;
+		String comment;
+		List<ParamLine> params;
+
+		MemberLine(boolean isMethod, String desc, String[] names) {
+			this.isMethod = isMethod;
+			this.desc = desc;
+			this.names = names;
 		}
 	}
 
-	public static void fillFromColumn(Path file, String column, MappingBlob blob) throws IOException {
-		try (InputStream in = getMappingStream(file)) {
-			Mappings mappings = MappingsProvider.readTinyMappings(in, false);
+	private static class ParamLine {
+		final int lvIndex;
+		final String[] names;
+		String comment;
 
-			if (!mappings.getNamespaces().contains(column)) {
-				throw new IllegalArgumentException("Namespace " + column + " not found in " + file);
+		ParamLine(int lvIndex, String[] names) {
+			this.lvIndex = lvIndex;
+			this.names = names;
+		}
+	}
+
+	/**
+	 * Read the given tiny file (either V1 or V2) in a single pass, passing the requested columns to each of the targets.
+	 * Descriptors are remapped into each target's from column as needed, so any column can be used regardless of which is first.
+	 */
+	public static void readTiny(Path file, Target... targets) throws IOException {
+		List<String> namespaces;
+		Collection<ClassLine> classes;
+
+		try (BufferedReader reader = getMappingReader(file)) {
+			String header = reader.readLine();
+
+			if (header == null) {
+				return; //Nothing to read in an empty file
+			} else if (header.startsWith("v1\t")) {
+				namespaces = Arrays.asList(header.substring(3).split("\t"));
+				classes = readV1(reader, namespaces.size());
+			} else if (header.startsWith("tiny\t2\t")) {
+				String[] bits;
+				namespaces = Arrays.asList(bits = header.split("\t")).subList(3, bits.length);
+				classes = readV2(reader, namespaces.size());
+			} else {
+				throw new IOException("Unlikely tiny file given " + header);
+			}
+		}
+
+		for (Target target : targets) {
+			if (target.copy != null) {
+				writeV1(target.copy, namespaces, classes);
+				continue;
 			}
 
-			for (ClassEntry entry : mappings.getClassEntries()) {
-				blob.acceptClass(entry.get(column), null);
+			int from = namespaces.indexOf(target.from);
+			if (from < 0) throw new IllegalArgumentException("Namespace " + target.from + " not found in " + file);
+
+			int to;
+			if (!target.isComments()) {
+				to = namespaces.indexOf(target.to);
+				if (to < 0) throw new IllegalArgumentException("Namespace " + target.to + " not found in " + file);
+			} else {
+				to = -1;
 			}
-			for (MethodEntry entry : mappings.getMethodEntries()) {
-				EntryTriple mapping = entry.get(column);
-				blob.acceptMethod(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+
+			UnaryOperator<String> descRemapper;
+			if (from != 0) {
+				Map<String, String> classPool = new HashMap<>();
+				for (ClassLine clazz : classes) {
+					classPool.put(clazz.names[0], clazz.names[from]);
+				}
+				descRemapper = desc -> MappingBlob.remapDesc(desc, name -> classPool.getOrDefault(name, name));
+			} else {
+				descRemapper = UnaryOperator.identity();
 			}
-			for (FieldEntry entry : mappings.getFieldEntries()) {
-				EntryTriple mapping = entry.get(column);
-				blob.acceptField(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+
+			IMappingAcceptor acceptor = target.acceptor;
+			for (ClassLine clazz : classes) {
+				String className = clazz.names[from];
+
+				if (to >= 0) {
+					if (!clazz.implicit && !isEmpty(clazz.names[to])) acceptor.acceptClass(className, clazz.names[to]);
+				} else if (clazz.comment != null) {
+					acceptor.acceptClassComment(className, clazz.comment);
+				}
+
+				for (MemberLine member : clazz.members) {
+					String name = member.names[from];
+					if (isEmpty(name)) continue;
+					String desc = descRemapper.apply(member.desc);
+
+					if (to >= 0) {
+						String mapped = member.names[to];
+
+						if (member.isMethod) {
+							if (!isEmpty(mapped)) acceptor.acceptMethod(className, name, desc, null, mapped, null);
+
+							if (member.params != null) {
+								for (ParamLine param : member.params) {
+									if (!isEmpty(param.names[to])) acceptor.acceptMethodArg(className, name, desc, param.lvIndex, param.names[to]);
+								}
+							}
+						} else if (!isEmpty(mapped)) {
+							acceptor.acceptField(className, name, desc, null, mapped, null);
+						}
+					} else if (member.isMethod) {
+						if (member.comment != null) acceptor.acceptMethodComment(className, name, desc, member.comment);
+
+						if (member.params != null) {
+							for (ParamLine param : member.params) {
+								if (param.comment != null) acceptor.acceptMethodArgComment(className, name, desc, param.lvIndex, param.comment);
+							}
+						}
+					} else if (member.comment != null) {
+						acceptor.acceptFieldComment(className, name, desc, member.comment);
+					}
+				}
 			}
 		}
 	}
 
-	public static void readComments(Path file, String from, UnaryOperator<String> classRemapper, IMappingAcceptor mappingAcceptor) throws IOException {
-		try (Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
-			TinyV2Visitor.read(in, new MappingsVisitor() {
-				private int index;
+	private static void writeV1(Path file, List<String> namespaces, Collection<ClassLine> classes) throws IOException {
+		try (TinyWriter writer = new TinyWriter(file, namespaces.toArray(new String[0]))) {
+			for (ClassLine clazz : classes) {
+				if (!clazz.implicit) writer.acceptClass(clazz.names);
 
-				@Override
-				public void visitVersion(int major, int minor) {
-					assert major == 2;
+				for (MemberLine member : clazz.members) {
+					if (member.isMethod) {
+						writer.acceptMethod(clazz.names[0], member.desc, member.names);
+					} else {
+						writer.acceptField(clazz.names[0], member.desc, member.names);
+					}
 				}
+			}
+		}
+	}
+
+	private static boolean isEmpty(String name) {
+		return name == null || name.isEmpty();
+	}
+
+	private static String[] fillNames(String[] line, int offset, int namespaces, boolean escaped) {
+		String[] names = new String[namespaces];
+
+		for (int i = 0; i < namespaces; i++) {
+			String name = offset + i < line.length ? line[offset + i] : "";
+			names[i] = escaped ? unescape(name) : name;
+		}
+
+		return names;
+	}
+
+	private static Collection<ClassLine> readV1(BufferedReader reader, int namespaces) throws IOException {
+		Map<String, ClassLine> classes = new LinkedHashMap<>();
 
-				@Override
-				public void visitProperty(String name) {
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if (line.isEmpty() || line.charAt(0) == '#') continue;
+			String[] parts = line.split("\t", -1);
+
+			switch (parts[0]) {
+			case "CLASS": {
+				String[] names = fillNames(parts, 1, namespaces, false);
+				for (int i = 1; i < namespaces; i++) {
+					if (names[i].isEmpty()) names[i] = names[0];
 				}
 
-				@Override
-				public void visitProperty(String name, String value) {
+				ClassLine existing = classes.get(names[0]);
+				if (existing != null) {//Members came first
+					System.arraycopy(names, 0, existing.names, 0, namespaces);
+					existing.implicit = false;
+				} else {
+					classes.put(names[0], new ClassLine(names));
 				}
+				break;
+			}
+
+			case "FIELD":
+			case "METHOD": {
+				String owner = parts[1];
+				ClassLine clazz = classes.computeIfAbsent(owner, k -> {
+					String[] names = new String[namespaces];
+					Arrays.fill(names, owner);
+
+					ClassLine implicit = new ClassLine(names);
+					implicit.implicit = true;
+					return implicit;
+				});
+				clazz.members.add(new MemberLine("METHOD".equals(parts[0]), parts[2], fillNames(parts, 3, namespaces, false)));
+				break;
+			}
+
+			default: //Something we don't understand, so don't need
+				break;
+			}
+		}
+
+		return classes.values();
+	}
+
+	private static Collection<ClassLine> readV2(BufferedReader reader, int namespaces) throws IOException {
+		List<ClassLine> classes = new ArrayList<>();
+		boolean escaped = false;
+		ClassLine clazz = null;
+		MemberLine member = null;
+		ParamLine param = null;
+
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if (line.isEmpty()) continue;
+
+			int depth = 0;
+			while (depth < line.length() && line.charAt(depth) == '\t') depth++;
+			String[] parts = line.substring(depth).split("\t", -1);
 
-				@Override
-				public void visitNamespaces(String... namespaces) {
-					index = Arrays.asList(namespaces).indexOf(from);
-					if (index < 0) throw new IllegalArgumentException("Provided namespace " + from + " was not in " + file);
+			if (clazz == null && depth == 1) {//Properties come before any classes
+				if ("escaped-names".equals(parts[0])) escaped = true;
+				continue;
+			}
+
+			switch (depth) {
+			case 0:
+				if ("c".equals(parts[0])) {
+					String[] names = fillNames(parts, 1, namespaces, escaped);
+					for (int i = 1; i < namespaces; i++) {
+						if (names[i].isEmpty()) names[i] = names[0];
+					}
+
+					classes.add(clazz = new ClassLine(names));
+					member = null;
+					param = null;
 				}
+				break;
+
+			case 1:
+				switch (parts[0]) {
+				case "f":
+				case "m":
+					clazz.members.add(member = new MemberLine("m".equals(parts[0]), escaped ? unescape(parts[1]) : parts[1], fillNames(parts, 2, namespaces, escaped)));
+					param = null;
+					break;
+
+				case "c":
+					clazz.comment = readComment(line, depth);
+					break;
+				}
+				break;
+
+			case 2:
+				switch (parts[0]) {
+				case "p":
+					if (member.params == null) member.params = new ArrayList<>();
+					member.params.add(param = new ParamLine(Integer.parseInt(parts[1]), fillNames(parts, 2, namespaces, escaped)));
+					break;
+
+				case "v": //Yarn doesn't publish these, and we don't handle them
+					param = null;
+					break;
+
+				case "c":
+					member.comment = readComment(line, depth);
+					break;
+				}
+				break;
 
-				@Override
-				public ClassVisitor visitClass(long offset, String[] names) {
-					return new ClassVisitor() {
-						private final String className = names[index];
-
-						@Override
-						public MethodVisitor visitMethod(long offset, String[] names, String descriptor) {
-							return new MethodVisitor() {
-								private final String name = names[index];
-								private final String desc = index == 0 ? descriptor : MappingBlob.remapDesc(descriptor, classRemapper);
-
-								@Override
-								public ParameterVisitor visitParameter(long offset, String[] names, int localVariableIndex) {
-									return new ParameterVisitor() {
-										@Override
-										public void visitComment(String line) {
-											mappingAcceptor.acceptMethodArgComment(className, name, desc, localVariableIndex, line);
-										}
-									};
-								}
+			case 3:
+				if ("c".equals(parts[0]) && param != null) {
+					param.comment = readComment(line, depth);
+				}
+				break;
+			}
+		}
 
-								@Override
-								public LocalVisitor visitLocalVariable(long offset, String[] names, int localVariableIndex, int localVariableStartOffset, int localVariableTableIndex) {
-									assert false;
-									return null; //Yarn doesn't publish these, and we don't handle them
-								}
+		return classes;
+	}
 
-								@Override
-								public void visitComment(String line) {
-									mappingAcceptor.acceptMethodComment(className, name, desc, line);
-								}
-							};
-						}
+	private static String readComment(String line, int depth) {
+		return unescape(line.substring(depth + 2)); //Skip over the c\t
+	}
 
-						@Override
-						public FieldVisitor visitField(long offset, String[] names, String descriptor) {
-							return new FieldVisitor() {
-								private final String name = names[index];
-								private final String desc = index == 0 ? descriptor : MappingBlob.remapDesc(descriptor, classRemapper);
+	private static String unescape(String text) {
+		int start = text.indexOf('\\');
+		if (start < 0) return text;
 
-								@Override
-								public void visitComment(String line) {
-									mappingAcceptor.acceptFieldComment(className, name, desc, line);
-								}
-							};
-						}
+		StringBuilder out = new StringBuilder(text.length());
+		out.append(text, 0, start);
 
-						@Override
-						public void visitComment(String line) {
-							mappingAcceptor.acceptClassComment(className, line);
-						}
-					};
+		for (int i = start; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '\\' && i + 1 < text.length()) {
+				switch (c = text.charAt(++i)) {
+				case 'n':
+					c = '\n';
+					break;
+
+				case 'r':
+					c = '\r';
+					break;
+
+				case 't':
+					c = '\t';
+					break;
+
+				case '0':
+					c = '\0';
+					break;
 				}
-			});
+			}
+
+			out.append(c);
+		}
+
+		return out.toString();
+	}
+
+	public static Mappings readMappings(Path file) throws IOException {
+		try (InputStream in = getMappingStream(file)) {
+			return MappingsProvider.readTinyMappings(in, false);
+		}
+	}
+
+	public static Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> readTiny(Path file, String commonNamespace) throws IOException {
+		return readTiny(readMappings(file), commonNamespace);
+	}
+
+	public static Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> readTiny(Mappings mappings, String commonNamespace) {
+		if (!mappings.getNamespaces().contains(commonNamespace)) {
+			throw new IllegalArgumentException("Namespace " + commonNamespace + " not found in " + mappings.getNamespaces());
+		}
+
+		Map<String, ? extends Set<MethodEntry>> methods = mappings.getMethodEntries().stream().collect(Collectors.groupingBy(method -> method.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+		Map<String, ? extends Set<FieldEntry>> fields = mappings.getFieldEntries().stream().collect(Collectors.groupingBy(field -> field.get(commonNamespace).getOwner(), ImmutableSet.toImmutableSet()));
+
+		Map<ClassEntry, Pair<Set<MethodEntry>, Set<FieldEntry>>> out = mappings.getClassEntries().stream().collect(Collectors.toMap(Function.identity(), entry -> {
+			String name = entry.get(commonNamespace);
+
+			Set<MethodEntry> entryMethods = methods.remove(name);
+			Set<FieldEntry> entryFields = fields.remove(name);
+			return Pair.of(entryMethods != null ? entryMethods : Collections.emptySet(), entryFields != null ? entryFields : Collections.emptySet());
+		}));
+
+		for (Entry<String, ? extends Set<MethodEntry>> entry : methods.entrySet()) {
+			String className = entry.getKey();
+
+			Set<FieldEntry> entryFields = fields.remove(className);
+			out.put(namespace -> className, Pair.of(entry.getValue(), entryFields != null ? entryFields : Collections.emptySet()));
+		}
+
+		for (Entry<String, ? extends Set<FieldEntry>> entry : fields.entrySet()) {
+			String className = entry.getKey();
+			out.put(namespace -> className, Pair.of(Collections.emptySet(), entry.getValue()));
+		}
+
+		return out;
+	}
+
+	public static void readTiny(Mappings mappings, String from, String to, IMappingAcceptor mappingAcceptor) {
+		if (!mappings.getNamespaces().contains(from)) {
+			throw new IllegalArgumentException("Namespace " + from + " not found in " + mappings.getNamespaces());
+		}
+		if (!mappings.getNamespaces().contains(to)) {
+			throw new IllegalArgumentException("Namespace " + to + " not found in " + mappings.getNamespaces());
+		}
+
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			mappingAcceptor.acceptClass(entry.get(from), entry.get(to));
+		}
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			EntryTriple mapping = entry.get(from);
+			mappingAcceptor.acceptMethod(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, entry.get(to).getName(), null);
+		}
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			EntryTriple mapping = entry.get(from);
+			mappingAcceptor.acceptField(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, entry.get(to).getName(), null);
+		}
+	}
+
+	public static void fillFromColumn(Path file, String column, MappingBlob blob) throws IOException {
+		fillFromColumn(readMappings(file), column, blob);
+	}
+
+	public static void fillFromColumn(Mappings mappings, String column, MappingBlob blob) {
+		if (!mappings.getNamespaces().contains(column)) {
+			throw new IllegalArgumentException("Namespace " + column + " not found in " + mappings.getNamespaces());
+		}
+
+		for (ClassEntry entry : mappings.getClassEntries()) {
+			blob.acceptClass(entry.get(column), null);
+		}
+		for (MethodEntry entry : mappings.getMethodEntries()) {
+			EntryTriple mapping = entry.get(column);
+			blob.acceptMethod(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
+		}
+		for (FieldEntry entry : mappings.getFieldEntries()) {
+			EntryTriple mapping = entry.get(column);
+			blob.acceptField(mapping.getOwner(), mapping.getName(), mapping.getDesc(), null, null, null);
 		}
 	}
 }
\ No newline at end of file
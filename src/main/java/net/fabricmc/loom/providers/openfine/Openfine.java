@@ -28,8 +28,6 @@ import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -43,20 +41,17 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
-import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
-
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
-import com.google.common.collect.Streams;
 
 import net.fabricmc.loom.providers.JarNameFactory;
 import net.fabricmc.loom.providers.JarNamingStrategy;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.providers.MappingsProvider.MappingFactory;
+import net.fabricmc.loom.providers.mappings.MappingsLookup;
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.FieldEntry;
@@ -192,24 +187,20 @@ public class Openfine {
 	public static void applyBonusMappings(MappingsProvider mappingsProvider) throws IOException {
 		List<FieldEntry> extra = new ArrayList<>();
 
-		for (FieldEntry field : mappingsProvider.getMappings().getFieldEntries()) {
-			String interName = field.get("intermediary").getName();
-
-			switch (interName) {
-			case "field_1937": //Option#CLOUDS
-				extra.add(namespace -> {
-					EntryTriple real = field.get(namespace);
-					return new EntryTriple(real.getOwner(), "official".equals(namespace) ? "CLOUDS" : "CLOUDS_OF", real.getDesc());
-				});
-				break;
-
-			case "field_4062": //WorldRenderer#renderDistance
-				extra.add(namespace -> {
-					EntryTriple real = field.get(namespace);
-					return new EntryTriple(real.getOwner(), "official".equals(namespace) ? "renderDistance" : "renderDistance_OF", real.getDesc());
-				});
-				break;
-			}
+		MappingsLookup lookup = MappingsLookup.of(mappingsProvider.getMappings());
+
+		for (FieldEntry field : lookup.getFieldsNamed("intermediary", "field_1937")) {//Option#CLOUDS
+			extra.add(namespace -> {
+				EntryTriple real = field.get(namespace);
+				return new EntryTriple(real.getOwner(), "official".equals(namespace) ? "CLOUDS" : "CLOUDS_OF", real.getDesc());
+			});
+		}
+
+		for (FieldEntry field : lookup.getFieldsNamed("intermediary", "field_4062")) {//WorldRenderer#renderDistance
+			extra.add(namespace -> {
+				EntryTriple real = field.get(namespace);
+				return new EntryTriple(real.getOwner(), "official".equals(namespace) ? "renderDistance" : "renderDistance_OF", real.getDesc());
+			});
 		}
 
 		mappingsProvider.mcRemappingFactory = new MappingFactory() {
@@ -247,144 +238,133 @@ public class Openfine {
 		};
 	}
 
-	public static void transformRemovals(Logger logger, MappingsProvider mappingsProvider, File namedJar) throws IOException {
+	/** Make a transformer for the classes of the named jar which remaps the members in any {@link OptiFineRemoved} annotations */
+	public static EntryTransformer makeRemovalTransformer(Logger logger, MappingsProvider mappingsProvider) throws IOException {
 		Map<String, String> notchToNamed = new HashMap<>();
 		mappingsProvider.mcRemappingFactory.create("official", "named").load(notchToNamed, notchToNamed, notchToNamed);
 
 		Map<String, String> namedToNotch = new HashMap<>();
 		mappingsProvider.mcRemappingFactory.create("named", "official").load(namedToNotch, new EmptyMap<>(), new EmptyMap<>());
 
-		ZipEntryTransformerEntry[] transforms;
-		try (ZipFile jar = new ZipFile(namedJar)) {
-			transforms = Streams.stream(Iterators.forEnumeration(jar.entries())).map(ZipEntry::getName).filter(name -> name.endsWith(".class")).distinct().map(className -> {
-				return new ZipEntryTransformerEntry(className, new ByteArrayZipEntryTransformer() {
-					private ClassVisitor makeVisitor(ClassVisitor parent) {
-						return new ClassVisitor(Opcodes.ASM7, parent) {
-							private final String removedDescriptor = Type.getDescriptor(OptiFineRemoved.class);
-							private String className;
-
-							@Override
-							public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-								super.visit(version, access, className = name, signature, superName, interfaces);
-							}
-
-							private AnnotationVisitor makeVisitor(String descriptor, AnnotationVisitor parent) {
-								if (removedDescriptor.equals(descriptor)) {
-									return new AnnotationVisitor(Opcodes.ASM7, parent) {
-										private OptiFineRemoved.Type removalType;
-
-										@Override
-										public void visitEnum(String name, String descriptor, String value) {
-											if ("type".equals(name)) {
-												assert Type.getDescriptor(OptiFineRemoved.Type.class).equals(descriptor);
-												removalType = OptiFineRemoved.Type.valueOf(value);
-												logger.debug("Passing removal of " + removalType + " in " + className);
-											}
-
-											super.visitEnum(name, descriptor, value);
-										}
+		return new EntryTransformer() {
+			private ClassVisitor makeVisitor(ClassVisitor parent) {
+				return new ClassVisitor(Opcodes.ASM7, parent) {
+					private final String removedDescriptor = Type.getDescriptor(OptiFineRemoved.class);
+					private String className;
+
+					@Override
+					public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+						super.visit(version, access, className = name, signature, superName, interfaces);
+					}
 
-										private Type remapType(Type type) {
-											switch (type.getSort()) {
-											case Type.ARRAY:
-												return Type.getObjectType(Strings.repeat("[", type.getDimensions()).concat(remapType(type.getElementType()).getDescriptor()));
+					private AnnotationVisitor makeVisitor(String descriptor, AnnotationVisitor parent) {
+						if (removedDescriptor.equals(descriptor)) {
+							return new AnnotationVisitor(Opcodes.ASM7, parent) {
+								private OptiFineRemoved.Type removalType;
 
-											case Type.OBJECT:
-												return Type.getObjectType(notchToNamed.getOrDefault(type.getInternalName(), type.getInternalName()));
+								@Override
+								public void visitEnum(String name, String descriptor, String value) {
+									if ("type".equals(name)) {
+										assert Type.getDescriptor(OptiFineRemoved.Type.class).equals(descriptor);
+										removalType = OptiFineRemoved.Type.valueOf(value);
+										logger.debug("Passing removal of " + removalType + " in " + className);
+									}
 
-											default:
-												return type;
-											}
-										}
+									super.visitEnum(name, descriptor, value);
+								}
 
-										private String memberReplace(String member, boolean method) {
-											int split = member.lastIndexOf(method ? '(' : '#');
-											String name = member.substring(0, split);
-											String desc = member.substring(method ? split : split + 1);
-
-											String clazz = namedToNotch.get(className);
-											if (clazz != null) {
-												String remap = clazz + '/' + (method ? MemberInstance.getMethodId(name, desc) : MemberInstance.getFieldId(name, desc, false));
-												name = notchToNamed.getOrDefault(remap, name);
-											} else {
-												logger.warn("Unable to find backwards mapping for ".concat(className));
-											}
-
-											Type descType = Type.getType(desc);
-											if (method) {
-												desc = Arrays.stream(descType.getArgumentTypes()).map(this::remapType).map(Type::getClassName).collect(Collectors.joining(", "));
-												return remapType(descType.getReturnType()).getClassName() + ' ' + name + '(' + desc + ')';
-											} else {
-												desc = remapType(descType).getClassName();
-												return desc + ' ' + name;
-											}
-										}
+								private Type remapType(Type type) {
+									switch (type.getSort()) {
+									case Type.ARRAY:
+										return Type.getObjectType(Strings.repeat("[", type.getDimensions()).concat(remapType(type.getElementType()).getDescriptor()));
+
+									case Type.OBJECT:
+										return Type.getObjectType(notchToNamed.getOrDefault(type.getInternalName(), type.getInternalName()));
+
+									default:
+										return type;
+									}
+								}
+
+								private String memberReplace(String member, boolean method) {
+									int split = member.lastIndexOf(method ? '(' : '#');
+									String name = member.substring(0, split);
+									String desc = member.substring(method ? split : split + 1);
+
+									String clazz = namedToNotch.get(className);
+									if (clazz != null) {
+										String remap = clazz + '/' + (method ? MemberInstance.getMethodId(name, desc) : MemberInstance.getFieldId(name, desc, false));
+										name = notchToNamed.getOrDefault(remap, name);
+									} else {
+										logger.warn("Unable to find backwards mapping for ".concat(className));
+									}
+
+									Type descType = Type.getType(desc);
+									if (method) {
+										desc = Arrays.stream(descType.getArgumentTypes()).map(this::remapType).map(Type::getClassName).collect(Collectors.joining(", "));
+										return remapType(descType.getReturnType()).getClassName() + ' ' + name + '(' + desc + ')';
+									} else {
+										desc = remapType(descType).getClassName();
+										return desc + ' ' + name;
+									}
+								}
 
-										@Override
-										public void visit(String name, Object value) {
-											if ("name".equals(name)) {
-												if (removalType == null) {
-													throw new IllegalStateException("Found annotation methods in unexpected order in ".concat(className));
-												}
-
-												switch (removalType) {
-												case INTERFACE:
-													value = notchToNamed.getOrDefault(value, (String) value);
-													break;
-
-												case METHOD: {
-													value = memberReplace((String) value, true);
-													break;
-												}
-
-												case FIELD:
-													value = memberReplace((String) value, false);
-													break;
-												}
-											}
-
-											super.visit(name, value);
+								@Override
+								public void visit(String name, Object value) {
+									if ("name".equals(name)) {
+										if (removalType == null) {
+											throw new IllegalStateException("Found annotation methods in unexpected order in ".concat(className));
 										}
-									};
-								} else {
-									return new AnnotationVisitor(Opcodes.ASM7, parent) {
-										@Override
-										public AnnotationVisitor visitAnnotation(String name, String descriptor) {
-											return makeVisitor(descriptor, super.visitAnnotation(name, descriptor));
+
+										switch (removalType) {
+										case INTERFACE:
+											value = notchToNamed.getOrDefault(value, (String) value);
+											break;
+
+										case METHOD: {
+											value = memberReplace((String) value, true);
+											break;
 										}
 
-										@Override
-										public AnnotationVisitor visitArray(String name) {
-											return makeVisitor(null, super.visitArray(name));
+										case FIELD:
+											value = memberReplace((String) value, false);
+											break;
 										}
-									};
+									}
+
+									super.visit(name, value);
+								}
+							};
+						} else {
+							return new AnnotationVisitor(Opcodes.ASM7, parent) {
+								@Override
+								public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+									return makeVisitor(descriptor, super.visitAnnotation(name, descriptor));
 								}
-							}
 
-							@Override
-							public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-								return makeVisitor(descriptor, super.visitAnnotation(descriptor, visible));
-							}
-						};
+								@Override
+								public AnnotationVisitor visitArray(String name) {
+									return makeVisitor(null, super.visitArray(name));
+								}
+							};
+						}
 					}
 
 					@Override
-					protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
-						logger.debug("Rebuilding " + className.substring(0, className.length() - 6));
-
-						ClassWriter classWriter = new ClassWriter(0);
-						new ClassReader(input).accept(makeVisitor(classWriter), 0);
-						return classWriter.toByteArray();
+					public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+						return makeVisitor(descriptor, super.visitAnnotation(descriptor, visible));
 					}
+				};
+			}
 
-					@Override
-					protected boolean preserveTimestamps() {
-						return true; //Why not?
-					}
-				});
-			}).toArray(ZipEntryTransformerEntry[]::new);
-		}
+			@Override
+			public byte[] transform(String name, byte[] input) throws IOException {
+				logger.debug("Rebuilding " + name.substring(0, name.length() - 6));
 
-		ZipUtil.transformEntries(namedJar, transforms);
+				ClassWriter classWriter = new ClassWriter(0);
+				new ClassReader(input).accept(makeVisitor(classWriter), 0);
+				return classWriter.toByteArray();
+			}
+		};
 	}
 }
\ No newline at end of file
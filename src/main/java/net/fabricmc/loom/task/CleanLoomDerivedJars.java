@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.task;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+import net.fabricmc.loom.providers.mappings.LayerCache;
+
+public class CleanLoomDerivedJars extends AbstractLoomTask {
+	private long keepSize;
+
+	/** How much of the store, the classpath skeletons and each Minecraft version's mapping layers (in megabytes each) to keep, removing the least recently used first */
+	@Internal
+	public long getKeepSize() {
+		return keepSize;
+	}
+
+	public void setKeepSize(long keepSize) {
+		this.keepSize = keepSize;
+	}
+
+	@TaskAction
+	public void run() {
+		try {
+			int removed = getExtension().getDerivedJarStore().collectGarbage(keepSize * 1024 * 1024);
+			getLogger().info("Removed " + removed + " entries from the derived jar store");
+		} catch (IOException e) {
+			throw new RuntimeException("Error cleaning derived jar store", e);
+		}
+
+		try {
+			int removed = getExtension().getClasspathSkeletons().collectGarbage(keepSize * 1024 * 1024);
+			getLogger().info("Removed " + removed + " classpath skeletons");
+		} catch (IOException e) {
+			throw new RuntimeException("Error cleaning classpath skeletons", e);
+		}
+
+		File[] versions = new File(getExtension().getUserCache(), "mappings").listFiles(File::isDirectory);
+		if (versions != null) {
+			int removed = 0;
+
+			for (File version : versions) {
+				try {
+					removed += new LayerCache(new File(version, "layers").toPath()).collectGarbage(keepSize * 1024 * 1024);
+				} catch (IOException e) {
+					throw new RuntimeException("Error cleaning mapping layers for " + version.getName(), e);
+				}
+			}
+
+			getLogger().info("Removed " + removed + " cached mapping layers");
+		}
+	}
+}
@@ -24,13 +24,34 @@
 
 package net.fabricmc.loom.task;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import org.apache.commons.io.IOUtils;
 
 import org.gradle.api.Project;
 import org.gradle.api.Task;
@@ -43,30 +64,66 @@ import org.gradle.jvm.tasks.Jar;
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.MappingsProvider;
 import net.fabricmc.loom.util.AccessTransformerHelper;
+import net.fabricmc.loom.util.ClasspathSkeletons;
+import net.fabricmc.loom.util.DerivedJarStore;
 import net.fabricmc.loom.util.GradleSupport;
 import net.fabricmc.loom.util.MixinRefmapHelper;
 import net.fabricmc.loom.util.NestedJars;
+import net.fabricmc.loom.util.ParallelZipTransformer;
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
+import net.fabricmc.loom.util.RemapManifest;
 import net.fabricmc.loom.util.TinyRemapperMappingsHelper;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
 
 public class RemapJarTask extends Jar {
+	/** A remapper which can be cloned until it is dropped from {@link #SHARED_REMAPPERS}, at which point it is finished */
+	private static final class SharedRemapper {
+		private final TinyRemapper remapper;
+		private boolean finished;
+
+		SharedRemapper(TinyRemapper remapper) {
+			this.remapper = remapper;
+		}
+
+		/** Clone the remapper, or {@code null} if it has already been finished */
+		synchronized TinyRemapper cloneRemapper() {//Parallel builds might be cloning the same remapper at once
+			return !finished ? remapper.cloner().build() : null;
+		}
+
+		synchronized void finish() {
+			if (!finished) {
+				finished = true;
+				remapper.finish();
+			}
+		}
+	}
+	/** Whether to give each remap its own Tiny Remapper rather than sharing the classpath between them, can be set with {@code -Dfabric.loom.unsharedRemapJar=true} */
+	private static final boolean UNSHARED = Boolean.getBoolean("fabric.loom.unsharedRemapJar");
+	/** Remappers which have read the parts of the classpath which aren't from any project, kept for the life of the daemon to be cloned by each remap */
+	private static final Cache<List<Object>, SharedRemapper> SHARED_REMAPPERS = CacheBuilder.newBuilder().maximumSize(4)
+			.removalListener((RemovalNotification<List<Object>, SharedRemapper> notification) -> notification.getValue().finish()).build();
 	private final RegularFileProperty input = GradleSupport.getFileProperty(getProject());
 	private boolean addNestedDependencies;
 	private boolean includeAT = true;
 	private boolean convertAT;
+	private boolean incremental;
 
 	@TaskAction
 	public void doTask() throws Throwable {
 		Path input = getInput().getAsFile().get().toPath();
 		Path output = getArchivePath().toPath();
 
-		remap(this, input, output, addNestedDependencies, !includeAT, convertAT);
+		remap(this, input, output, addNestedDependencies, !includeAT, convertAT, incremental);
 		getProject().getExtensions().getByType(LoomGradleExtension.class).addUnmappedMod(input);
 	}
 
 	public static void remap(Task task, Path input, Path output, boolean addNestedDependencies, boolean skipATs, boolean convertAT) throws IOException {
+		remap(task, input, output, addNestedDependencies, skipATs, convertAT, false);
+	}
+
+	public static void remap(Task task, Path input, Path output, boolean addNestedDependencies, boolean skipATs, boolean convertAT, boolean incremental) throws IOException {
 		if (!Files.exists(input)) {
 			throw new FileNotFoundException(input.toString());
 		}
@@ -83,18 +140,6 @@ public class RemapJarTask extends Jar {
 		);
 		Path[] classpath = classpathFiles.stream().map(File::toPath).filter((p) -> !input.equals(p) && Files.exists(p)).toArray(Path[]::new);
 
-		File mixinMapFile = mappingsProvider.MAPPINGS_MIXIN_EXPORT;
-		Path mixinMapPath = mixinMapFile.toPath();
-
-		TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
-
-		remapperBuilder = remapperBuilder.withMappings(TinyRemapperMappingsHelper.create(extension, mappingsProvider.getMappings(), fromM, toM));
-		remapperBuilder.ignoreConflicts(extension.shouldBulldozeMappings());
-
-		if (mixinMapFile.exists()) {
-			remapperBuilder = remapperBuilder.withMappings(TinyUtils.createTinyMappingProvider(mixinMapPath, fromM, toM));
-		}
-
 		task.getLogger().lifecycle(":remapping " + input.getFileName());
 
 		StringBuilder rc = new StringBuilder("Remap classpath: ");
@@ -105,27 +150,36 @@ public class RemapJarTask extends Jar {
 
 		task.getLogger().debug(rc.toString());
 
-		TinyRemapper remapper = remapperBuilder.build();
+		if (incremental) {
+			//Remap into the task's directory, then copy out so there's an untouched copy of the last remap to update next time
+			Path lastRemap = task.getTemporaryDir().toPath().resolve("last-remap.jar");
+			Path manifestFile = task.getTemporaryDir().toPath().resolve("last-remap.manifest");
 
-		try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
-			outputConsumer.addNonClassFiles(input);
-			remapper.readClassPath(classpath);
-			remapper.readInputs(input);
-			remapper.apply(outputConsumer);
-			if (!skipATs) {
-				boolean did;
-				if (!convertAT) {
-					did = AccessTransformerHelper.obfATs(extension, task, remapper, outputConsumer);
+			RemapManifest manifest = RemapManifest.of(input, makeIncrementalKey(extension, mappingsProvider, classpath, fromM, toM, skipATs, convertAT));
+			RemapManifest previous = Files.exists(lastRemap) ? RemapManifest.read(manifestFile) : null;
+			Set<String> changed = manifest.findChangedClasses(previous);
+			Files.deleteIfExists(manifestFile); //Will be rewritten once the remap is done
+
+			if (changed == null) {
+				task.getLogger().info("Remapping all of " + input.getFileName());
+				boolean didATs = remapFully(task, extension, mappingsProvider, classpath, fromM, toM, input, lastRemap, skipATs, convertAT);
+				manifest = manifest.withFlag(didATs);
+			} else {
+				task.getLogger().info("Remapping " + changed.size() + " changed class(es) from " + input.getFileName());
+				if (!changed.isEmpty() && !remapChanged(task, extension, mappingsProvider, classpath, fromM, toM, input, changed, lastRemap)) {
+					task.getLogger().info("Couldn't update last remap, remapping all of " + input.getFileName());
+					manifest = manifest.withFlag(remapFully(task, extension, mappingsProvider, classpath, fromM, toM, input, lastRemap, skipATs, convertAT));
 				} else {
-					skipATs = !(did = AccessTransformerHelper.convertATs(extension, task, remapper, outputConsumer));
+					manifest = manifest.withFlag(previous.getFlag());
 				}
-
-				if (did) task.getLogger().info("Remapped access transformer");
 			}
-		} catch (Exception e) {
-			throw new RuntimeException("Failed to remap " + input + " to " + output, e);
-		} finally {
-			remapper.finish();
+
+			manifest.write(manifestFile);
+			Files.copy(lastRemap, output, StandardCopyOption.REPLACE_EXISTING);
+			if (convertAT) skipATs |= !manifest.getFlag();
+		} else {
+			boolean didATs = remapFully(task, extension, mappingsProvider, classpath, fromM, toM, input, output, skipATs, convertAT);
+			if (convertAT) skipATs |= !didATs;
 		}
 
 		if (!Files.exists(output)) {
@@ -151,6 +205,183 @@ public class RemapJarTask extends Jar {
 		}
 	}
 
+	private static TinyRemapper makeRemapper(Task task, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path[] classpath, String fromM, String toM) throws IOException {
+		Project project = task.getProject();
+		File mixinMapFile = mappingsProvider.MAPPINGS_MIXIN_EXPORT;
+		Path mixinMapPath = mixinMapFile.toPath();
+
+		ClasspathSkeletons skeletons = extension.getClasspathSkeletons();
+		//Anything built by a project can change between remaps, but everything else (Minecraft, its libraries and mods) is the same for all of them
+		Set<Path> buildDirs = project.getRootProject().getAllprojects().stream().map(p -> p.getBuildDir().toPath().toAbsolutePath()).collect(Collectors.toSet());
+		Map<Boolean, List<Path>> split = Arrays.stream(classpath).collect(Collectors.partitioningBy(p -> buildDirs.stream().anyMatch(p.toAbsolutePath()::startsWith)));
+		Path[] projectOutputs = split.get(Boolean.TRUE).toArray(new Path[0]); //Not worth making skeletons for when they'll be different next time
+
+		TinyRemapper remapper;
+		if (UNSHARED) {
+			TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
+
+			remapperBuilder = remapperBuilder.withMappings(TinyRemapperMappingsHelper.create(extension, mappingsProvider.getMappings(), fromM, toM));
+			remapperBuilder.ignoreConflicts(extension.shouldBulldozeMappings());
+
+			if (mixinMapFile.exists()) {
+				remapperBuilder = remapperBuilder.withMappings(TinyUtils.createTinyMappingProvider(mixinMapPath, fromM, toM));
+			}
+
+			remapper = remapperBuilder.build();
+			remapper.readClassPath(skeletons.skeletonsFor(split.get(Boolean.FALSE).toArray(new Path[0])));
+			remapper.readClassPath(projectOutputs);
+		} else {
+			Path[] shared = skeletons.skeletonsFor(split.get(Boolean.FALSE).toArray(new Path[0]));
+			List<Object> key = new ArrayList<>();
+			File mappingsFile = mappingsProvider.MAPPINGS_TINY; //Key on the file rather than the Mappings so only the remappers keep them around
+			Collections.addAll(key, mappingsFile.getAbsolutePath() + ':' + mappingsFile.length() + ':' + mappingsFile.lastModified(), fromM, toM, extension.shouldBulldozeMappings());
+			key.add(mixinMapFile.exists() ? mixinMapPath.toAbsolutePath() + ":" + mixinMapFile.length() + ':' + mixinMapFile.lastModified() : null);
+			for (Path path : shared) {
+				File file = path.toFile();
+				key.add(path.toAbsolutePath() + ":" + file.length() + ':' + file.lastModified());
+			}
+
+			do {
+				SharedRemapper base;
+				try {
+					base = SHARED_REMAPPERS.get(key, () -> {
+						task.getLogger().info("Reading shared remap classpath");
+						TinyRemapper.Builder remapperBuilder = TinyRemapper.newRemapper();
+
+						remapperBuilder = remapperBuilder.withMappings(TinyRemapperMappingsHelper.create(mappingsProvider.getMappings(), fromM, toM));
+						remapperBuilder.ignoreConflicts(extension.shouldBulldozeMappings());
+
+						if (mixinMapFile.exists()) {
+							remapperBuilder = remapperBuilder.withMappings(TinyUtils.createTinyMappingProvider(mixinMapPath, fromM, toM));
+						}
+
+						TinyRemapper out = remapperBuilder.build();
+						try {
+							out.readClassPath(shared);
+						} catch (Throwable t) {
+							out.finish();
+							throw t;
+						}
+						return new SharedRemapper(out);
+					});
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Error reading remap classpath", e.getCause());
+				}
+
+				remapper = base.cloneRemapper();
+			} while (remapper == null); //Only happens if it was evicted between getting it and cloning it, in which case it will be read again
+			remapper.readClassPath(projectOutputs);
+		}
+
+		return remapper;
+	}
+
+	/** Remap all of the given input jar to the given output, returning whether an access transformer was remapped too */
+	private static boolean remapFully(Task task, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path[] classpath, String fromM, String toM,
+			Path input, Path output, boolean skipATs, boolean convertAT) throws IOException {
+		TinyRemapper remapper = makeRemapper(task, extension, mappingsProvider, classpath, fromM, toM);
+
+		boolean did = false;
+		try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
+			outputConsumer.addNonClassFiles(input);
+			remapper.readInputs(input);
+			remapper.apply(outputConsumer);
+			if (!skipATs) {
+				if (!convertAT) {
+					did = AccessTransformerHelper.obfATs(extension, task, remapper, outputConsumer);
+				} else {
+					did = AccessTransformerHelper.convertATs(extension, task, remapper, outputConsumer);
+				}
+
+				if (did) task.getLogger().info("Remapped access transformer");
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Failed to remap " + input + " to " + output, e);
+		} finally {
+			remapper.finish();
+		}
+
+		return did;
+	}
+
+	/** Remap only the given classes from the input jar, replacing them in the last remapped output. Returns whether the last output could be updated */
+	private static boolean remapChanged(Task task, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path[] classpath, String fromM, String toM,
+			Path input, Set<String> changed, Path lastRemap) throws IOException {
+		Path changedJar = task.getTemporaryDir().toPath().resolve("changed-classes.jar");
+		Path unchangedJar = task.getTemporaryDir().toPath().resolve("unchanged-classes.jar");
+		Path remappedJar = task.getTemporaryDir().toPath().resolve("changed-remapped.jar");
+
+		try {
+			//Split the input so the unchanged classes are only on the classpath, leaving the remapper to output just the changed ones
+			try (ZipFile zip = new ZipFile(input.toFile());
+					ZipOutputStream changedOut = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(changedJar)));
+					ZipOutputStream unchangedOut = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(unchangedJar)))) {
+				for (ZipEntry entry : Collections.list(zip.entries())) {
+					if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+					ZipOutputStream out = changed.contains(entry.getName()) ? changedOut : unchangedOut;
+					out.putNextEntry(new ZipEntry(entry.getName()));
+					try (InputStream in = zip.getInputStream(entry)) {
+						IOUtils.copy(in, out);
+					}
+					out.closeEntry();
+				}
+			}
+
+			TinyRemapper remapper = makeRemapper(task, extension, mappingsProvider, classpath, fromM, toM);
+			remapper.readClassPath(unchangedJar); //Not worth making a skeleton for when it'll be different next time
+			try (OutputConsumerPath outputConsumer = new OutputConsumerPath(remappedJar)) {
+				remapper.readInputs(changedJar);
+				remapper.apply(outputConsumer);
+			} catch (Exception e) {
+				throw new RuntimeException("Failed to remap " + input + " to " + remappedJar, e);
+			} finally {
+				remapper.finish();
+			}
+
+			Map<String, byte[]> remapped = new HashMap<>();
+			try (ZipFile zip = new ZipFile(remappedJar.toFile())) {
+				for (ZipEntry entry : Collections.list(zip.entries())) {
+					if (entry.isDirectory()) continue;
+
+					try (InputStream in = zip.getInputStream(entry)) {
+						remapped.put(entry.getName(), IOUtils.toByteArray(in));
+					}
+				}
+			}
+
+			//Classes which end up with different names aren't worth trying to track, so start again
+			try (ZipFile zip = new ZipFile(lastRemap.toFile())) {
+				for (String name : remapped.keySet()) {
+					if (zip.getEntry(name) == null) return false;
+				}
+			}
+
+			EntryTransformer replacer = (name, data) -> remapped.get(name);
+			ParallelZipTransformer.transformEntries(lastRemap.toFile(), name -> remapped.containsKey(name) ? replacer : null, Collections.emptyMap());
+			return true;
+		} finally {
+			Files.deleteIfExists(changedJar);
+			Files.deleteIfExists(unchangedJar);
+			Files.deleteIfExists(remappedJar);
+		}
+	}
+
+	/** Make the key for everything outside of the input jar which changes how it will be remapped */
+	private static String makeIncrementalKey(LoomGradleExtension extension, MappingsProvider mappingsProvider, Path[] classpath, String fromM, String toM,
+			boolean skipATs, boolean convertAT) {
+		DerivedJarStore.Key key = new DerivedJarStore.Key().put(fromM).put(toM).put(extension.shouldBulldozeMappings()).put(skipATs).put(convertAT);
+
+		Function<File, String> describe = file -> file.exists() ? file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified() : file.getAbsolutePath();
+		key.put(describe.apply(mappingsProvider.MAPPINGS_TINY)).put(describe.apply(mappingsProvider.MAPPINGS_MIXIN_EXPORT));
+		key.put(extension.hasAT() ? describe.apply(extension.getAT()) : "");
+		for (Path path : classpath) {
+			key.put(describe.apply(path.toFile()));
+		}
+
+		return key.build();
+	}
+
 	@InputFile
 	public RegularFileProperty getInput() {
 		return input;
@@ -182,4 +413,14 @@ public class RemapJarTask extends Jar {
 	public void setAddNestedDependencies(boolean value) {
 		addNestedDependencies = value;
 	}
+
+	/** Whether to only remap the classes whose bodies have changed since the last remap, rather than the whole jar each time */
+	@Input
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
 }
@@ -30,10 +30,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
@@ -54,7 +54,7 @@ class ClassInfo {
      * Loading and parsing classes is expensive, so keep a cache of all the
      * information we generate
      */
-    private static final Map<String, ClassInfo> cache = new HashMap<>();
+    private static final Map<String, ClassInfo> cache = new ConcurrentHashMap<>();
     static final Set<File> EXTRA_LOOKUPS = new HashSet<>();
 
     private static final ClassInfo OBJECT = new ClassInfo();
@@ -12,8 +12,11 @@ import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -31,15 +34,14 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.ParameterNode;
-import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 
 import net.fabricmc.loom.task.AbstractLoomTask;
+import net.fabricmc.loom.util.ParallelZipTransformer;
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
 import net.fabricmc.loom.util.progress.ProgressLogger;
 
 public class RebuildLVTTask extends AbstractLoomTask {
@@ -56,17 +58,17 @@ public class RebuildLVTTask extends AbstractLoomTask {
 
 		ClassInfo.EXTRA_LOOKUPS.add(getInput());
 		ClassInfo.EXTRA_LOOKUPS.addAll(getLibraries().getFiles());
-		ZipUtil.transformEntries(getInput(), getTransformers(progressLogger));
+		ParallelZipTransformer.transformEntries(getInput(), getTransformers(progressLogger));
 		ClassInfo.EXTRA_LOOKUPS.remove(getInput());
 		ClassInfo.EXTRA_LOOKUPS.removeAll(getLibraries().getFiles());
 
 		progressLogger.completed();
 	}
 
-	private ZipEntryTransformerEntry[] getTransformers(ProgressLogger logger) throws ZipException, IOException {
+	private Map<String, EntryTransformer> getTransformers(ProgressLogger logger) throws ZipException, IOException {
 		try (ZipFile jar = new ZipFile(getInput())) {
-			return Streams.stream(Iterators.forEnumeration(jar.entries())).map(ZipEntry::getName).filter(name -> name.endsWith(".class")).distinct().map(className -> {
-				return new ZipEntryTransformerEntry(className, new ByteArrayZipEntryTransformer() {
+			return Streams.stream(Iterators.forEnumeration(jar.entries())).map(ZipEntry::getName).filter(name -> name.endsWith(".class")).distinct().collect(Collectors.toMap(Function.identity(), className -> {
+				return new EntryTransformer() {
 					private boolean isBlank(CharSequence text) {
 				        int length;
 				        if (text == null || (length = text.length()) == 0) {
@@ -115,8 +117,10 @@ public class RebuildLVTTask extends AbstractLoomTask {
 					}
 
 					@Override
-					protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
-						logger.progress("Rebuilding " + className.substring(0, className.length() - 6));
+					public byte[] transform(String name, byte[] input) throws IOException {
+						synchronized (logger) {
+							logger.progress("Rebuilding " + className.substring(0, className.length() - 6));
+						}
 
 						ClassNode node = new ClassNode();
 						new ClassReader(input).accept(node, ClassReader.EXPAND_FRAMES);
@@ -152,13 +156,8 @@ public class RebuildLVTTask extends AbstractLoomTask {
 						node.accept(writer);
 						return writer.toByteArray();
 					}
-
-					@Override
-					protected boolean preserveTimestamps() {
-						return true; //Why not?
-					}
-				});
-			}).toArray(ZipEntryTransformerEntry[]::new);
+				};
+			}));
 		}
 	}
 
@@ -25,23 +25,25 @@ package net.fabricmc.loom.util;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -60,7 +62,6 @@ import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.commons.Remapper;
 
 import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
 import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
 import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
 
@@ -69,6 +70,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import net.fabricmc.loom.LoomGradleExtension;
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.OutputConsumerPath;
 import net.fabricmc.tinyremapper.TinyRemapper;
@@ -80,9 +82,9 @@ public class AccessTransformerHelper {
 	private interface MethodProcessor {//BiConsumer<String, String> which throws an IOException
 		void accept(String className, String method) throws IOException;
 	}
-	private static final String MAGIC_AT_NAME = "silky.at";
+	static final String MAGIC_AT_NAME = "silky.at";
 	private static final String MAGICALLY_BAD_AT_NAME = "silky.aw";
-	private static final String BAD_AT_NAME = "accessWidener";
+	static final String BAD_AT_NAME = "accessWidener";
 
 	public static void copyInAT(LoomGradleExtension extension, AbstractCopyTask task) {
 		if (extension.hasAT()) {
@@ -170,133 +172,125 @@ public class AccessTransformerHelper {
 		}));
 	}
 
-	public static boolean deobfATs(File jar, TinyRemapper tiny, OutputConsumerPath output) throws IOException {
-		Path temp = Files.createTempDirectory("fabric-loom");
+	public static boolean deobfATs(ZipFile zip, TinyRemapper tiny, BiConsumer<String, byte[]> output) throws IOException {
+		boolean hasWritten = false;
+		ZipEntry entry = zip.getEntry(MAGIC_AT_NAME);
 
-		try (ZipFile zip = new ZipFile(jar)) {
-			boolean hasWritten = false;
-			ZipEntry entry = zip.getEntry(MAGIC_AT_NAME);
+		if (entry != null) {
+			ByteArrayOutputStream at = new ByteArrayOutputStream();
 
-			if (entry != null) {
-				Path at = temp.resolve(MAGIC_AT_NAME);
+			try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8);
+					BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(at, StandardCharsets.UTF_8))) {
+				readATs(in, writer, tiny.getRemapper());
+			}
 
-				try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8);
-						BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(at), StandardCharsets.UTF_8))) {
-					readATs(in, writer, tiny.getRemapper());
-				}
+			output.accept(MAGIC_AT_NAME, at.toByteArray());
+			hasWritten = true;
+		}
+
+		entry = zip.getEntry("fabric.mod.json");
 
-				output.addNonClassFile(at, MAGIC_AT_NAME);
-				hasWritten = true;
+		off: if (entry != null) {
+			try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+				JsonElement json = JsonParser.parseReader(in);
+
+				if (!json.isJsonObject() || !json.getAsJsonObject().has(BAD_AT_NAME) || (entry = zip.getEntry(json.getAsJsonObject().get(BAD_AT_NAME).getAsString())) == null) {
+					break off;
+				}
 			}
 
-			entry = zip.getEntry("fabric.mod.json");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
 
-			off: if (entry != null) {
-				try (Reader in = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
-					JsonElement json = JsonParser.parseReader(in);
+			out: try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8));
+					BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+				reader.mark(2048); //It should only need to read the expected header
+				String[] header = reader.readLine().split("\\s+");
 
-					if (!json.isJsonObject() || !json.getAsJsonObject().has(BAD_AT_NAME) || (entry = zip.getEntry(json.getAsJsonObject().get(BAD_AT_NAME).getAsString())) == null) {
-						break off;
-					}
+				if (header.length != 3 || !BAD_AT_NAME.equals(header[0])) {
+					throw new UnsupportedOperationException("Invalid access access widener header " + header + " in " + zip.getName());
 				}
 
-				Path aw = temp.resolve(entry.getName());
-				Files.createDirectories(aw.getParent());
+				if (!"v1".equals(header[1])) {
+					throw new RuntimeException("Unsupported access widener format " + header[1] + " in " + zip.getName());
+				}
 
-				out: try (BufferedReader reader = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8));
-						OutputStream out = Files.newOutputStream(aw);
-						BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
-					reader.mark(2048); //It should only need to read the expected header
-					String[] header = reader.readLine().split("\\s+");
+				switch (header[2]) {
+				case "named":
+					reader.reset();
+					IOUtils.copy(reader, out, StandardCharsets.UTF_8);
+					break out; //Probably nothing to do
 
-					if (header.length != 3 || !BAD_AT_NAME.equals(header[0])) {
-						throw new UnsupportedOperationException("Invalid access access widener header " + header + " in " + jar);
-					}
+				case "intermediary":
+					writer.write(BAD_AT_NAME + "\tv1\tnamed");
+					writer.newLine();
+					break;
 
-					if (!"v1".equals(header[1])) {
-						throw new RuntimeException("Unsupported access widener format " + header[1] + " in " + jar);
-					}
+				default:
+					throw new IllegalArgumentException("Unexpected access widener namespace: " + header[2] + " in " + zip.getName());
+				}
 
-					switch (header[2]) {
-					case "named":
-						reader.reset();
-						IOUtils.copy(reader, out, StandardCharsets.UTF_8);
-						break out; //Probably nothing to do
+				Remapper remapper = tiny.getRemapper();
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					int split = line.indexOf('#');
+					if (split >= 0) line = line.substring(0, split);
+
+					line = line.trim(); //Clip off whitespace
+					if (line.isEmpty()) continue;
+
+					String[] parts = line.split("\\s+");
+					switch (parts[1]) {
+					case "class":
+						if (parts.length != 3) {
+							throw new RuntimeException("Expected (<access>\tclass\t<className>) got " + line + " in " + zip.getName());
+						}
 
-					case "intermediary":
-						writer.write(BAD_AT_NAME + "\tv1\tnamed");
+						writer.write(parts[0]);
+						writer.write("\tclass\t");
+						writer.write(remapper.map(parts[2]));
 						writer.newLine();
 						break;
 
-					default:
-						throw new IllegalArgumentException("Unexpected access widener namespace: " + header[2] + " in " + jar);
-					}
-
-					Remapper remapper = tiny.getRemapper();
-					for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-						int split = line.indexOf('#');
-						if (split >= 0) line = line.substring(0, split);
-
-						line = line.trim(); //Clip off whitespace
-						if (line.isEmpty()) continue;
-
-						String[] parts = line.split("\\s+");
-						switch (parts[1]) {
-						case "class":
-							if (parts.length != 3) {
-								throw new RuntimeException("Expected (<access>\tclass\t<className>) got " + line + " in " + jar);
-							}
+					case "field":
+						if (parts.length != 5) {
+							throw new RuntimeException("Expected (<access>\tfield\t<className>\t<fieldName>\t<fieldDesc>) got " + line + " in " + zip.getName());
+						}
 
-							writer.write(parts[0]);
-							writer.write("\tclass\t");
-							writer.write(remapper.map(parts[2]));
-							writer.newLine();
-							break;
+						writer.write(parts[0]);
+						writer.write("\tfield\t");
+						writer.write(remapper.map(parts[2]));
+						writer.write('\t');
+						writer.write(remapper.mapFieldName(parts[2], parts[3], parts[4]));
+						writer.write('\t');
+						writer.write(remapper.mapDesc(parts[4]));
+						writer.newLine();
+						break;
 
-						case "field":
-							if (parts.length != 5) {
-								throw new RuntimeException("Expected (<access>\tfield\t<className>\t<fieldName>\t<fieldDesc>) got " + line + " in " + jar);
-							}
+					case "method":
+						if (parts.length != 5) {
+							throw new RuntimeException("Expected (<access>\tmethod\t<className>\t<methodName>\t<methodDesc>) got " + line + " in " + zip.getName());
+						}
 
-							writer.write(parts[0]);
-							writer.write("\tfield\t");
-							writer.write(remapper.map(parts[2]));
-							writer.write('\t');
-							writer.write(remapper.mapFieldName(parts[2], parts[3], parts[4]));
-							writer.write('\t');
-							writer.write(remapper.mapDesc(parts[4]));
-							writer.newLine();
-							break;
-
-						case "method":
-							if (parts.length != 5) {
-								throw new RuntimeException("Expected (<access>\tmethod\t<className>\t<methodName>\t<methodDesc>) got " + line + " in " + jar);
-							}
+						writer.write(parts[0]);
+						writer.write("\tmethod\t");
+						writer.write(remapper.map(parts[2]));
+						writer.write('\t');
+						writer.write(remapper.mapMethodName(parts[2], parts[3], parts[4]));
+						writer.write('\t');
+						writer.write(remapper.mapMethodDesc(parts[4]));
+						writer.newLine();
+						break;
 
-							writer.write(parts[0]);
-							writer.write("\tmethod\t");
-							writer.write(remapper.map(parts[2]));
-							writer.write('\t');
-							writer.write(remapper.mapMethodName(parts[2], parts[3], parts[4]));
-							writer.write('\t');
-							writer.write(remapper.mapMethodDesc(parts[4]));
-							writer.newLine();
-							break;
-
-						default:
-							throw new UnsupportedOperationException("Unsupported type " + parts[1] + " on line " + line);
-						}
+					default:
+						throw new UnsupportedOperationException("Unsupported type " + parts[1] + " on line " + line);
 					}
 				}
-
-				output.addNonClassFile(aw, entry.getName());
-				hasWritten = true;
 			}
 
-			return hasWritten;
-		} finally {
-			Files.walkFileTree(temp, new DeletingFileVisitor());
+			output.accept(entry.getName(), out.toByteArray());
+			hasWritten = true;
 		}
+
+		return hasWritten;
 	}
 
 	private static void readATs(Reader from, BufferedWriter to, Remapper remapper) throws IOException {
@@ -343,7 +337,7 @@ public class AccessTransformerHelper {
 		}
 	}
 
-	private static class ZipAT extends ByteArrayZipEntryTransformer {
+	private static class ZipAT implements EntryTransformer {
 		/** The class name of the type we're aiming to transform */
 		public final String className;
 		/** A set of all methods we're aiming to transform in {@link #className} */
@@ -352,7 +346,7 @@ public class AccessTransformerHelper {
 		private final boolean selfAT;
 		/** A set of all inner classes that need to be transformed */
 		private final Set<String> innerTransforms = new HashSet<>();
-		/** Whether we have been used (ie {@link #transform(ZipEntry, byte[])} has been called) */
+		/** Whether we have been used (ie {@link #transform(String, byte[])} has been called) */
 		boolean hasTransformed = false;
 
 		ZipAT(Entry<String, Set<String>> entry, String wildcard) {
@@ -378,12 +372,7 @@ public class AccessTransformerHelper {
 		}
 
 		@Override
-		protected boolean preserveTimestamps() {
-			return true;
-		}
-
-		@Override
-		protected byte[] transform(ZipEntry zipEntry, byte[] data) throws IOException {
+		public byte[] transform(String name, byte[] data) throws IOException {
 			if (hasTransformed) throw new IllegalStateException("Transformer for " + className + " was attempted to be reused");
 			hasTransformed = true; //We only expect to be run once (although aren't technically limited to prevent it)
 
@@ -433,18 +422,51 @@ public class AccessTransformerHelper {
 		}
 	}
 
-	public static class ZipEntryAT extends ZipEntryTransformerEntry {
-		public ZipEntryAT(ZipAT transformer) {
-			super(transformer.className + ".class", transformer);
+	/** Apply the given access transformations to the given jar in place, returning the names of any classes which were to be transformed but couldn't be found */
+	public static List<String> transformJar(File jar, Set<String> classPool, Map<String, Set<String>> transforms, String wildcard) throws IOException {
+		Map<String, ZipAT> transformers = makeATs(classPool, transforms, wildcard);
+
+		ParallelZipTransformer.transformEntries(jar, transformers.values().stream().collect(Collectors.toMap(transformer -> transformer.className + ".class", Function.identity())));
+
+		return transformers.values().stream().filter(transformer -> !transformer.hasTransformed).map(transformer -> transformer.className).collect(Collectors.toList());
+	}
+
+	/** A {@link TinyRemapper} output which applies access transformations to the classes being written as they pass through */
+	public static class RemapAT implements BiConsumer<String, byte[]> {
+		private final Map<String, ZipAT> transformers;
+		private final BiConsumer<String, byte[]> output;
+
+		RemapAT(Map<String, ZipAT> transformers, BiConsumer<String, byte[]> output) {
+			this.transformers = transformers;
+			this.output = output;
+		}
+
+		@Override
+		public void accept(String name, byte[] data) {
+			ZipAT transformer = transformers.get(name);
+
+			if (transformer != null) {
+				try {
+					data = transformer.transform(name, data);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Error transforming " + name, e);
+				}
+			}
+
+			output.accept(name, data);
 		}
 
-		/** Whether the transformer for this entry has been applied */
-		public boolean didTransform() {
-			return ((ZipAT) getTransformer()).hasTransformed;
+		/** The names of any classes which were to be transformed but never passed through */
+		public List<String> getMissed() {
+			return transformers.values().stream().filter(transformer -> !transformer.hasTransformed).map(transformer -> transformer.className).collect(Collectors.toList());
 		}
 	}
 
-	public static ZipEntryAT[] makeZipATs(Set<String> classPool, Map<String, Set<String>> transforms, String wildcard) {
+	public static RemapAT makeRemapATs(Set<String> classPool, Map<String, Set<String>> transforms, String wildcard, BiConsumer<String, byte[]> output) {
+		return new RemapAT(makeATs(classPool, transforms, wildcard), output);
+	}
+
+	private static Map<String, ZipAT> makeATs(Set<String> classPool, Map<String, Set<String>> transforms, String wildcard) {
 		Map<String, ZipAT> transformers = transforms.entrySet().stream().collect(Collectors.toMap(Entry::getKey, entry -> new ZipAT(entry, wildcard)));
 
 		Set<String> classChanges = transformers.entrySet().stream().filter(entry -> entry.getValue().changesOwnAccess()).map(Entry::getKey).collect(Collectors.toSet());
@@ -479,6 +501,6 @@ public class AccessTransformerHelper {
 			}
 		}
 
-		return transformers.values().stream().map(ZipEntryAT::new).toArray(ZipEntryAT[]::new);
+		return transformers;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Remembers the SHA-1 of files along with the size, modification time and {@link BasicFileAttributes#fileKey() key} they had when hashed,
+ * so files which haven't changed since can be checked without reading them again. The hashes are persisted between builds in a single index file.
+ */
+public final class ChecksumCache {
+	/** Whether to hash files which aren't already known across threads when checking many at once, can be set with {@code -Dfabric.loom.parallelHashing=true} */
+	private static final boolean PARALLEL = Boolean.getBoolean("fabric.loom.parallelHashing");
+	private static final int MAGIC = 0x4C534841; //LSHA
+	private static final int VERSION = 1;
+	/** The caches already loaded, so builds in the same daemon don't have to read the index again */
+	private static final Map<Path, ChecksumCache> CACHES = new ConcurrentHashMap<>();
+	private static final Logger LOGGER = Logging.getLogger(ChecksumCache.class);
+
+	private static final class Record {
+		public final long size, modified;
+		public final String key, hash;
+
+		Record(long size, long modified, String key, String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.key = key;
+			this.hash = hash;
+		}
+
+		static Record of(BasicFileAttributes attributes, String hash) {
+			return new Record(attributes.size(), attributes.lastModifiedTime().toMillis(), Objects.toString(attributes.fileKey(), ""), hash);
+		}
+
+		boolean matches(BasicFileAttributes attributes) {
+			return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis() && key.equals(Objects.toString(attributes.fileKey(), ""));
+		}
+	}
+
+	private final Path index;
+	private final Map<Path, Record> records = new ConcurrentHashMap<>();
+	private volatile boolean dirty;
+
+	private ChecksumCache(Path index) {
+		this.index = index;
+
+		if (Files.exists(index)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+					for (int entries = in.readInt(); entries > 0; entries--) {
+						Path path = Paths.get(in.readUTF());
+						records.put(path, new Record(in.readLong(), in.readLong(), in.readUTF(), in.readUTF()));
+					}
+				}
+			} catch (EOFException e) {
+				//Probably didn't get finished being written, whatever was read can still be used
+			} catch (IOException e) {
+				LOGGER.info("Unable to read checksum index " + index, e);
+			}
+		}
+	}
+
+	/** Get the cache persisted in the given index file, which will be shared with any other callers for the same file */
+	public static ChecksumCache of(Path index) {
+		return CACHES.computeIfAbsent(index.toAbsolutePath(), ChecksumCache::new);
+	}
+
+	/** Get the SHA-1 of the given file's contents, only reading the file if it has changed since the last time it was hashed */
+	public String sha1(File file) throws IOException {
+		Path path = file.toPath().toAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		Record record = records.get(path);
+		if (record != null && record.matches(attributes)) {
+			return record.hash;
+		}
+
+		@SuppressWarnings("deprecation")
+		String hash = MoreFiles.asByteSource(path).hash(Hashing.sha1()).toString();
+
+		//Only remember the hash if the file wasn't changed whilst being read
+		record = Record.of(attributes, hash);
+		if (record.matches(Files.readAttributes(path, BasicFileAttributes.class))) {
+			records.put(path, record);
+			dirty = true;
+		}
+
+		return hash;
+	}
+
+	/** Whether the given file exists and has the given SHA-1 checksum */
+	public boolean matches(File file, String checksum) {
+		if (file == null) return false;
+
+		try {
+			String hash = sha1(file);
+
+			LOGGER.debug("Checksum check: '" + hash + "' == '" + checksum + "'?");
+			return hash.equals(checksum);
+		} catch (NoSuchFileException e) {
+			return false;
+		} catch (IOException e) {
+			LOGGER.warn("Unable to checksum " + file + ", assuming it has changed", e);
+			return false;
+		}
+	}
+
+	/** Find which of the given files are missing or don't have the SHA-1 checksum they are mapped to */
+	public Set<File> findMismatches(Map<File, String> checksums) {
+		Stream<Entry<File, String>> stream = checksums.entrySet().stream();
+		if (PARALLEL) stream = stream.parallel();
+
+		return stream.filter(entry -> !matches(entry.getKey(), entry.getValue())).map(Entry::getKey).collect(Collectors.toSet());
+	}
+
+	/** Write any new hashes out to the index file, dropping any files which no longer exist */
+	public synchronized void save() throws IOException {
+		if (!dirty) return;
+		dirty = false;
+
+		records.keySet().removeIf(Files::notExists);
+		Files.createDirectories(index.getParent());
+
+		Path temp = Files.createTempFile(index.getParent(), index.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				Map<Path, Record> records = new HashMap<>(this.records);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(records.size());
+
+				for (Entry<Path, Record> entry : records.entrySet()) {
+					Record record = entry.getValue();
+
+					out.writeUTF(entry.getKey().toString());
+					out.writeLong(record.size);
+					out.writeLong(record.modified);
+					out.writeUTF(record.key);
+					out.writeUTF(record.hash);
+				}
+			}
+
+			Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+/**
+ * Makes cut down copies of classpath jars for Tiny Remapper, keeping only the class hierarchy and member declarations it needs rather than the
+ * method bodies, debug information, annotations and resources it doesn't. Each copy is kept in the user cache keyed by the original's contents,
+ * so reading the classpath for each remap only has to parse a fraction of what it otherwise would. Skeletons which haven't been used recently
+ * are trimmed along with the derived jar store by {@code cleanLoomDerivedJars}.
+ */
+public final class ClasspathSkeletons {
+	/** Whether to give Tiny Remapper the full classpath jars instead, can be set with {@code -Dfabric.loom.fullClasspath=true} */
+	private static final boolean DISABLED = Boolean.getBoolean("fabric.loom.fullClasspath");
+	/** Bump whenever what is kept in the skeletons changes */
+	private static final int VERSION = 1;
+	private static final Logger LOGGER = Logging.getLogger(ClasspathSkeletons.class);
+	private final Path directory;
+	private final ChecksumCache checksums;
+
+	public ClasspathSkeletons(Path directory, ChecksumCache checksums) {
+		this.directory = directory;
+		this.checksums = checksums;
+	}
+
+	/** Get the skeleton for each of the given classpath entries, making any which don't exist yet in parallel */
+	public Path[] skeletonsFor(Path... classpath) {
+		if (DISABLED) return classpath;
+
+		return Arrays.stream(classpath).parallel().map(this::skeletonFor).toArray(Path[]::new);
+	}
+
+	/** Get the skeleton for the given classpath entry, or the entry itself if it isn't a jar (or can't be made into a skeleton) */
+	public Path skeletonFor(Path library) {
+		if (DISABLED || !Files.isRegularFile(library)) return library;
+
+		try {
+			Path skeleton = directory.resolve(checksums.sha1(library.toFile()) + "-v" + VERSION + ".jar");
+
+			if (Files.exists(skeleton)) {
+				RecentlyUsedFiles.touch(skeleton);
+			} else {
+				Files.createDirectories(directory);
+
+				Path temp = Files.createTempFile(directory, skeleton.getFileName().toString(), ".tmp");
+				try {
+					write(library, temp);
+					Files.move(temp, skeleton, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					Files.deleteIfExists(temp);
+				}
+			}
+
+			return skeleton;
+		} catch (IOException | RuntimeException e) {
+			LOGGER.debug("Unable to make classpath skeleton for " + library + ", using it directly", e);
+			return library;
+		}
+	}
+
+	/**
+	 * Remove the least recently used skeletons until those left take up no more than the given number of bytes, along with any made
+	 * by older versions or abandoned half written, returning how many were removed
+	 */
+	public int collectGarbage(long maxSize) throws IOException {
+		return RecentlyUsedFiles.trim(directory, "-v" + VERSION + ".jar", maxSize);
+	}
+
+	private static void write(Path library, Path to) throws IOException {
+		try (ZipFile zip = new ZipFile(library.toFile()); ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(to)))) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.isDirectory() || !entry.getName().endsWith(".class")) continue;
+
+				ClassReader reader;
+				try (InputStream in = zip.getInputStream(entry)) {
+					reader = new ClassReader(in);
+				}
+
+				ClassWriter writer = new ClassWriter(0);
+				reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+					@Override
+					public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+						return null;
+					}
+
+					@Override
+					public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+						return null;
+					}
+				}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+				out.putNextEntry(new ZipEntry(entry.getName()));
+				out.write(writer.toByteArray());
+				out.closeEntry();
+			}
+		}
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+
+/**
+ * A store of jars derived from Minecraft (and anything else expensive to rebuild) shared across every project using the same Gradle home,
+ * keyed by a hash of everything which went into making them rather than the name they end up with. Each entry is a set of named files,
+ * which are hard linked (or copied if that isn't possible) to wherever a project wants them.
+ *
+ * <p>An index of every entry's size and when it was last used is kept alongside so entries can be found without walking the store,
+ * and the least recently used entries are removed when the store grows past {@link #MAX_SIZE}.
+ */
+public final class DerivedJarStore {
+	/** How big the store can grow (in megabytes) before old entries are removed, can be set with {@code -Dfabric.loom.derivedJarStoreSize=<MB>} */
+	private static final long MAX_SIZE = Long.getLong("fabric.loom.derivedJarStoreSize", 4096) * 1024 * 1024;
+	/** How out of date an entry's last use can be before retrieving it updates the index, so retrieving the same entries repeatedly doesn't rewrite it each time */
+	private static final long USE_RESOLUTION = TimeUnit.HOURS.toMillis(1);
+	/** File locks are held by the whole JVM, so threads in the same daemon have to take turns before trying to lock the index */
+	private static final Map<Path, Object> THREAD_LOCKS = new ConcurrentHashMap<>();
+	private final Path directory;
+	private final Path stored;
+	private final Path staging;
+	private final Path index;
+	private final Path lock;
+
+	/** Builds up the key for an entry from all the inputs which went into making it */
+	public static final class Key {
+		private final Hasher hasher = Hashing.sha256().newHasher();
+
+		public Key put(String value) {
+			hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+			return this;
+		}
+
+		public Key put(boolean value) {
+			hasher.putBoolean(value);
+			return this;
+		}
+
+		/** Add the contents of the given file, rather than its name */
+		public Key put(Path file) throws IOException {
+			hasher.putBytes(MoreFiles.asByteSource(file).hash(Hashing.sha256()).asBytes());
+			return this;
+		}
+
+		/** Add all the given values, regardless of the order they come in */
+		public Key putAll(Collection<String> values) {
+			hasher.putInt(values.size());
+			values.stream().sorted().forEachOrdered(this::put);
+			return this;
+		}
+
+		public String build() {
+			return hasher.hash().toString();
+		}
+	}
+
+	private static final class IndexEntry {
+		public final long size;
+		public long lastUsed;
+
+		IndexEntry(long size, long lastUsed) {
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	public DerivedJarStore(Path directory) {
+		this.directory = directory;
+		stored = directory.resolve("entries");
+		staging = directory.resolve("staging");
+		index = directory.resolve("index");
+		lock = directory.resolve("index.lock");
+	}
+
+	/** Read the index, dropping anything which doesn't parse */
+	private Map<String, IndexEntry> readIndex() throws IOException {
+		Map<String, IndexEntry> out = new HashMap<>();
+
+		if (Files.exists(index)) {
+			try (BufferedReader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					String[] parts = line.split("\t");
+					if (parts.length != 3) continue;
+
+					try {
+						out.put(parts[0], new IndexEntry(Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+					} catch (NumberFormatException e) {
+						//Probably didn't get finished being written, it'll be skipped over
+					}
+				}
+			}
+		}
+
+		return out;
+	}
+
+	private void writeIndex(Map<String, IndexEntry> entries) throws IOException {
+		Path temp = Files.createTempFile(directory, "index", ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				for (Entry<String, IndexEntry> entry : entries.entrySet()) {
+					writer.write(entry.getKey() + '\t' + entry.getValue().size + '\t' + entry.getValue().lastUsed);
+					writer.newLine();
+				}
+			}
+
+			Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/** Run the given task whilst holding the lock on the index, so other builds sharing the store don't change it at the same time */
+	private <T> T locked(Callable<T> task) throws IOException {
+		Files.createDirectories(directory);
+
+		synchronized (THREAD_LOCKS.computeIfAbsent(lock.toAbsolutePath(), k -> new Object())) {
+			try (FileChannel channel = FileChannel.open(lock, StandardOpenOption.CREATE, StandardOpenOption.WRITE); FileLock held = channel.lock()) {
+				return task.call();
+			} catch (IOException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException("Error accessing derived jar store in " + directory, e);
+			}
+		}
+	}
+
+	private Path entryDirectory(String key) {
+		return stored.resolve(key);
+	}
+
+	/**
+	 * Link each of the files stored under the given key to the given destinations, returning whether the store had them all.
+	 * If it didn't, none of the destinations will have been touched.
+	 */
+	public boolean retrieve(String key, Map<String, File> files) throws IOException {
+		return locked(() -> {
+			Map<String, IndexEntry> entries = readIndex();
+			IndexEntry entry = entries.get(key);
+			if (entry == null) return false;
+
+			Path from = entryDirectory(key);
+			for (String name : files.keySet()) {
+				if (Files.notExists(from.resolve(name))) return false;
+			}
+
+			for (Entry<String, File> file : files.entrySet()) {
+				link(from.resolve(file.getKey()), file.getValue().toPath());
+			}
+
+			long now = System.currentTimeMillis();
+			if (now - entry.lastUsed > USE_RESOLUTION) {
+				entry.lastUsed = now;
+				writeIndex(entries);
+			}
+			return true;
+		});
+	}
+
+	private static void link(Path from, Path to) throws IOException {
+		Files.deleteIfExists(to);
+		Files.createDirectories(to.toAbsolutePath().getParent());
+
+		try {
+			Files.createLink(to, from);
+		} catch (UnsupportedOperationException | IOException e) {
+			//Probably on a different file system to the store, so will have to make do with a copy
+			Path temp = Files.createTempFile(to.toAbsolutePath().getParent(), to.getFileName().toString(), ".tmp");
+			try {
+				Files.copy(from, temp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(temp, to, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+
+	/** Save copies of the given files under the given key, replacing anything already stored with it, then trim the store if it is now too big */
+	public void store(String key, Map<String, File> files) throws IOException {
+		Files.createDirectories(staging);
+		Files.createDirectories(stored);
+		Path stage = Files.createTempDirectory(staging, key);
+
+		try {
+			long size = 0;
+			for (Entry<String, File> file : files.entrySet()) {
+				Path to = stage.resolve(file.getKey());
+				Files.copy(file.getValue().toPath(), to);
+				size += Files.size(to);
+			}
+
+			long entrySize = size;
+			locked(() -> {
+				Map<String, IndexEntry> entries = readIndex();
+
+				Path to = entryDirectory(key);
+				delete(to);
+				Files.move(stage, to, StandardCopyOption.ATOMIC_MOVE);
+				entries.put(key, new IndexEntry(entrySize, System.currentTimeMillis()));
+
+				trim(entries, MAX_SIZE);
+				writeIndex(entries);
+				return null;
+			});
+		} finally {
+			delete(stage);
+		}
+	}
+
+	/** Remove the least recently used entries until the store is no bigger than the given number of bytes, returning how many were removed */
+	private int trim(Map<String, IndexEntry> entries, long maxSize) throws IOException {
+		long size = entries.values().stream().mapToLong(entry -> entry.size).sum();
+		if (size <= maxSize) return 0;
+
+		List<String> oldest = entries.entrySet().stream().sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsed)).map(Entry::getKey).collect(Collectors.toList());
+		int removed = 0;
+
+		for (String key : oldest) {
+			if (size <= maxSize) break;
+
+			delete(entryDirectory(key));
+			size -= entries.remove(key).size;
+			removed++;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Remove anything in the store which isn't in the index (and so would never be found), then the least recently used entries
+	 * until the store is no bigger than the given number of bytes, returning how many were removed in total
+	 */
+	public int collectGarbage(long maxSize) throws IOException {
+		if (Files.notExists(directory)) return 0;
+
+		return locked(() -> {
+			Map<String, IndexEntry> entries = readIndex();
+
+			//Anything in the store which isn't in the index won't ever be found, so can go too
+			List<Path> orphans = new ArrayList<>();
+			if (Files.exists(stored)) {
+				try (Stream<Path> dirs = Files.list(stored)) {
+					dirs.filter(dir -> !entries.containsKey(dir.getFileName().toString())).forEach(orphans::add);
+				}
+			}
+			for (Path orphan : orphans) {
+				delete(orphan);
+			}
+
+			int removed = trim(entries, maxSize);
+			writeIndex(entries);
+			return orphans.size() + removed;
+		});
+	}
+
+	private static void delete(Path path) throws IOException {
+		try {
+			Files.walkFileTree(path, new DeletingFileVisitor());
+		} catch (NoSuchFileException e) {
+			//Already gone
+		}
+	}
+}
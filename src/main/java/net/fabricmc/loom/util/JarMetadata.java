@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The parts of a (potential) mod jar which get asked about whilst resolving dependencies: its {@code fabric.mod.json}, any installer JSONs,
+ * the jars it nests and whether it has an access transformer or widener. All of these are read in a single pass
+ * when a jar is first asked about, then kept for as long as the jar's size, modification time and {@link BasicFileAttributes#fileKey() key}
+ * stay the same (which is what {@link ChecksumCache} trusts to know a jar's hash hasn't changed).
+ */
+public final class JarMetadata {
+	private static final Pattern INSTALLER_JSON = Pattern.compile("fabric-installer(\\.[^/]+)?\\.json");
+	private static final Cache<Path, JarMetadata> CACHE = CacheBuilder.newBuilder().maximumSize(4096).softValues().build();
+
+	private final String stamp;
+	private final JsonElement modJson;
+	private final JsonParseException modJsonError;
+	private final Map<String, byte[]> installerJsons;
+	private final boolean hasAccessTransformer, hasAccessWidener;
+
+	private JarMetadata(String stamp, JsonElement modJson, JsonParseException modJsonError, Map<String, byte[]> installerJsons, boolean hasAccessTransformer, boolean hasAccessWidener) {
+		this.stamp = stamp;
+		this.modJson = modJson;
+		this.modJsonError = modJsonError;
+		this.installerJsons = installerJsons;
+		this.hasAccessTransformer = hasAccessTransformer;
+		this.hasAccessWidener = hasAccessWidener;
+	}
+
+	private static String stamp(BasicFileAttributes attributes) {
+		return attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ':' + Objects.toString(attributes.fileKey(), "");
+	}
+
+	/** Get the metadata for the given jar, only reading it if it has changed since it was last asked about */
+	public static JarMetadata of(File jar) throws IOException {
+		Path path = jar.toPath().toAbsolutePath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attributes.isRegularFile()) throw new IOException(jar + " is not a file");
+		String stamp = stamp(attributes);
+
+		JarMetadata existing = CACHE.getIfPresent(path);
+		if (existing != null && stamp.equals(existing.stamp)) return existing;
+
+		try {
+			CACHE.invalidate(path); //Make sure the out of date metadata is replaced
+			return CACHE.get(path, () -> scan(path, stamp));
+		} catch (ExecutionException e) {
+			Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException("Error reading " + jar, e.getCause());
+		}
+	}
+
+	private static JarMetadata scan(Path jar, String stamp) throws IOException {
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			JsonElement modJson = null;
+			JsonParseException modJsonError = null;
+			Map<String, byte[]> installerJsons = new HashMap<>();
+			boolean hasAccessWidener = false;
+
+			ZipEntry entry = zip.getEntry("fabric.mod.json");
+			if (entry != null) {
+				try (InputStream in = zip.getInputStream(entry)) {
+					modJson = JsonParser.parseString(new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+				} catch (JsonParseException e) {
+					modJsonError = e;
+				}
+
+				if (modJson != null && modJson.isJsonObject() && modJson.getAsJsonObject().has(AccessTransformerHelper.BAD_AT_NAME)) {
+					hasAccessWidener = zip.getEntry(modJson.getAsJsonObject().get(AccessTransformerHelper.BAD_AT_NAME).getAsString()) != null;
+				}
+			}
+
+			//Installer JSONs can be for any launch method so each name has to be checked, but that only needs the central directory
+			for (ZipEntry file : Collections.list(zip.entries())) {
+				if (INSTALLER_JSON.matcher(file.getName()).matches()) {
+					try (InputStream in = zip.getInputStream(file)) {
+						installerJsons.put(file.getName(), IOUtils.toByteArray(in));
+					}
+				}
+			}
+
+			return new JarMetadata(stamp, modJson, modJsonError, ImmutableMap.copyOf(installerJsons), zip.getEntry(AccessTransformerHelper.MAGIC_AT_NAME) != null, hasAccessWidener);
+		}
+	}
+
+	public boolean isFabricMod() {
+		return modJson != null || modJsonError != null;
+	}
+
+	/** A copy of the jar's {@code fabric.mod.json}, or {@code null} if it doesn't have one */
+	public JsonElement getModJson() {
+		if (modJsonError != null) throw new JsonSyntaxException("Malformed fabric.mod.json", modJsonError);
+		return modJson != null ? modJson.deepCopy() : null;
+	}
+
+	/** The mods declared by the jar's {@code fabric.mod.json}, which could be more than one if it's an array of them */
+	private List<JsonObject> getMods() {
+		if (modJson == null) return Collections.emptyList();
+
+		ImmutableList.Builder<JsonObject> out = ImmutableList.builder();
+		for (JsonElement mod : modJson.isJsonArray() ? modJson.getAsJsonArray() : Collections.singleton(modJson)) {
+			if (mod != null && mod.isJsonObject()) out.add(mod.getAsJsonObject());
+		}
+
+		return out.build();
+	}
+
+	/** The paths of each jar nested in this one, as declared in the {@code fabric.mod.json} */
+	public Set<String> getNestedJars() {
+		Set<String> out = new LinkedHashSet<>();
+
+		for (JsonObject mod : getMods()) {
+			if (!mod.has("jars")) continue;
+
+			for (JsonElement nest : mod.getAsJsonArray("jars")) {
+				out.add(nest.getAsJsonObject().getAsJsonPrimitive("file").getAsString());
+			}
+		}
+
+		return out;
+	}
+
+	/** Whether the jar has an access transformer or access widener which would need remapping along with it */
+	public boolean hasAccessTransformer() {
+		return hasAccessTransformer || hasAccessWidener;
+	}
+
+	/** Get the raw installer JSON with the given name, or {@code null} if the jar doesn't have one */
+	public byte[] getInstallerJson(String name) {
+		byte[] json = installerJsons.get(name);
+		return json != null ? json.clone() : null;
+	}
+}
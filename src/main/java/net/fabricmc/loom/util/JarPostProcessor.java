@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.gradle.api.logging.Logger;
+
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
+
+/**
+ * Collects the fix-ups to be done to a jar after it has been made, so they can all be applied in a single pass through it
+ * rather than each reading and writing the whole jar in turn. Entries matched by multiple transformers go through each in the order they were added.
+ * Fix-ups which can only be done to the whole jar at once are run on it before that pass, in the order they were added.
+ */
+public class JarPostProcessor {
+	/** Fixes up a whole jar in place */
+	@FunctionalInterface
+	public interface JarProcessor {
+		void process(File jar) throws IOException;
+	}
+	private static class Stage {
+		public final String name;
+		public final Predicate<String> filter;
+		public final EntryTransformer transformer;
+		public final LongAdder nanos = new LongAdder();
+		public final LongAdder entries = new LongAdder();
+
+		public Stage(String name, Predicate<String> filter, EntryTransformer transformer) {
+			this.name = name;
+			this.filter = filter;
+			this.transformer = transformer;
+		}
+
+		public byte[] transform(String entry, byte[] data) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return transformer.transform(entry, data);
+			} finally {
+				nanos.add(System.nanoTime() - start);
+				entries.increment();
+			}
+		}
+	}
+	private final Map<String, JarProcessor> processors = new LinkedHashMap<>();
+	private final List<Stage> stages = new ArrayList<>();
+	private final Map<String, byte[]> additions = new LinkedHashMap<>();
+
+	/** Add a processor which needs the whole jar rather than being able to go through it entry by entry */
+	public JarPostProcessor addJarProcessor(String name, JarProcessor processor) {
+		processors.put(name, processor);
+		return this;
+	}
+
+	/** Add a transformer for every entry in the jar the given filter matches */
+	public JarPostProcessor addTransformer(String name, Predicate<String> filter, EntryTransformer transformer) {
+		stages.add(new Stage(name, filter, transformer));
+		return this;
+	}
+
+	/** Add a transformer for every class in the jar */
+	public JarPostProcessor addClassTransformer(String name, EntryTransformer transformer) {
+		return addTransformer(name, entry -> entry.endsWith(".class"), transformer);
+	}
+
+	/** Add the given resource to the jar if it doesn't already have an entry with the same name */
+	public JarPostProcessor addResourceIfMissing(String name, byte[] contents) {
+		additions.put(name, contents);
+		return this;
+	}
+
+	public boolean isEmpty() {
+		return processors.isEmpty() && stages.isEmpty() && additions.isEmpty();
+	}
+
+	private EntryTransformer forEntry(String entry) {
+		List<Stage> matches = new ArrayList<>(1);
+
+		for (Stage stage : stages) {
+			if (stage.filter.test(entry)) matches.add(stage);
+		}
+
+		switch (matches.size()) {
+		case 0:
+			return null;
+
+		case 1:
+			return matches.get(0)::transform;
+
+		default:
+			return (name, data) -> {
+				for (Stage stage : matches) {
+					data = stage.transform(name, data);
+				}
+
+				return data;
+			};
+		}
+	}
+
+	/** Apply all the transformers and resources to the given jar in place, returning whether anything in the jar changed */
+	public boolean apply(Logger logger, File jar) throws IOException {
+		if (isEmpty()) return false;
+		logger.lifecycle(":post-processing " + jar.getName());
+
+		long start = System.nanoTime();
+		for (Entry<String, JarProcessor> processor : processors.entrySet()) {
+			long processStart = System.nanoTime();
+			processor.getValue().process(jar);
+			logger.info(processor.getKey() + " processed the jar in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - processStart) + "ms");
+		}
+
+		boolean changed = !processors.isEmpty(); //Can't tell whether the processors actually changed anything
+		if (!stages.isEmpty() || !additions.isEmpty()) {
+			changed |= ParallelZipTransformer.transformEntries(jar, this::forEntry, additions);
+		}
+		long taken = System.nanoTime() - start;
+
+		for (Stage stage : stages) {
+			logger.info(stage.name + " transformed " + stage.entries.sum() + " entries in " + TimeUnit.NANOSECONDS.toMillis(stage.nanos.sum()) + "ms (across all threads)");
+		}
+		logger.info("Post-processed " + jar.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(taken) + "ms");
+
+		return changed;
+	}
+}
@@ -32,7 +32,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.ZipEntry;
+import java.util.Map.Entry;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
@@ -41,10 +41,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
-import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.ByteArrayZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
-
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
 import net.fabricmc.loom.util.progress.ProgressLogger;
 
 /**
@@ -86,32 +83,29 @@ public class LineNumberRemapper {
 		}
 	}
 
-	public void process(ProgressLogger logger, File from, File to) {
-		ZipEntryTransformerEntry[] transformers = lineMap.entrySet().stream().map(entry -> {
-			String className = entry.getKey();
-
-			return new ZipEntryTransformerEntry(className + ".class", new ByteArrayZipEntryTransformer() {
-				private final RClass rClass = entry.getValue();
+	public void process(ProgressLogger logger, File from, File to) throws IOException {
+		Map<String, EntryTransformer> transformers = new HashMap<>();
 
-				@Override
-				protected byte[] transform(ZipEntry zipEntry, byte[] input) throws IOException {
-					if (logger != null) logger.progress("Remapping " + className);
-
-					ClassReader reader = new ClassReader(input);
-					ClassWriter writer = new ClassWriter(reader, 0);
+		for (Entry<String, RClass> entry : lineMap.entrySet()) {
+			String className = entry.getKey();
+			RClass rClass = entry.getValue();
 
-					reader.accept(new LineNumberVisitor(Opcodes.ASM7, writer, rClass), 0);
-					return writer.toByteArray();
+			transformers.put(className + ".class", (name, input) -> {
+				if (logger != null) {
+					synchronized (logger) {
+						logger.progress("Remapping " + className);
+					}
 				}
 
-				@Override
-				protected boolean preserveTimestamps() {
-					return true; //Why not?
-				}
+				ClassReader reader = new ClassReader(input);
+				ClassWriter writer = new ClassWriter(reader, 0);
+
+				reader.accept(new LineNumberVisitor(Opcodes.ASM7, writer, rClass), 0);
+				return writer.toByteArray();
 			});
-		}).toArray(ZipEntryTransformerEntry[]::new);
+		}
 
-		ZipUtil.transformEntries(from, transformers, to);
+		ParallelZipTransformer.transformEntries(from, transformers, to);
 	}
 
 	private static class LineNumberVisitor extends ClassVisitor {
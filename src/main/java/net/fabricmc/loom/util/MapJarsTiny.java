@@ -25,30 +25,35 @@
 package net.fabricmc.loom.util;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
+import com.google.common.base.Throwables;
+
 import org.gradle.api.InvalidUserDataException;
 import org.gradle.api.Project;
 import org.gradle.api.logging.Logger;
 
-import org.zeroturnaround.zip.ZipUtil;
-
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.loom.providers.JarNameFactory;
 import net.fabricmc.loom.providers.MappingsProvider;
@@ -56,12 +61,12 @@ import net.fabricmc.loom.providers.MinecraftMappedProvider;
 import net.fabricmc.loom.providers.MinecraftProvider;
 import net.fabricmc.loom.providers.MinecraftVersionAdaptable;
 import net.fabricmc.loom.providers.mappings.MappingBlob;
-import net.fabricmc.loom.util.AccessTransformerHelper.ZipEntryAT;
+import net.fabricmc.loom.providers.mappings.MappingsLookup;
+import net.fabricmc.loom.util.AccessTransformerHelper.RemapAT;
 import net.fabricmc.mappings.ClassEntry;
 import net.fabricmc.mappings.EntryTriple;
 import net.fabricmc.mappings.Mappings;
 import net.fabricmc.mappings.MethodEntry;
-import net.fabricmc.stitch.commands.CommandFixNesting;
 import net.fabricmc.stitch.util.Pair;
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.NonClassCopyMode;
@@ -70,51 +75,99 @@ import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyUtils;
 
 public class MapJarsTiny {
-	public static void mapJars(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project) throws IOException {
+	/**
+	 * Whether to map the merged jar to named directly alongside Intermediary, sharing a single read of the classpath between them,
+	 * rather than from the Intermediary jar after it is made, can be set with {@code -Dfabric.loom.fusedRemap=true}
+	 */
+	private static final boolean FUSED_REMAP = Boolean.getBoolean("fabric.loom.fusedRemap");
+	/** Special marker for an access transformation to the class itself rather than a method */
+	private static final String WILDCARD = "<*>";
+
+	public static void mapJars(MinecraftProvider jarProvider, MinecraftMappedProvider mapProvider, Project project, Set<Pair<String, String>> ats) throws IOException {
 		LoomGradleExtension extension = project.getExtensions().getByType(LoomGradleExtension.class);
 		MappingsProvider mappingsProvider = extension.getMappingsProvider();
 
-		Path[] classpath = mapProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new);
+		Path[] classpath = extension.getClasspathSkeletons().skeletonsFor(mapProvider.getMapperPaths().stream().map(File::toPath).toArray(Path[]::new));
+		Map<String, Map<String, Set<String>>> transforms = !ats.isEmpty() ? resolveATs(project, ats, mappingsProvider.getMappings()) : Collections.emptyMap();
 
-		interJar: {
-			String fromM;
-			switch (jarProvider.getMergeStrategy()) {
-			case FIRST:
-				fromM = "official";
-				break;
+		String fromM;
+		switch (jarProvider.getMergeStrategy()) {
+		case FIRST:
+			fromM = "official";
+			break;
 
-			case CLIENT_ONLY:
-				fromM = "client";
-				break;
+		case CLIENT_ONLY:
+			fromM = "client";
+			break;
 
-			case SERVER_ONLY:
-				fromM = "server";
-				break;
+		case SERVER_ONLY:
+			fromM = "server";
+			break;
 
-			case LAST:
-				if (!mapProvider.getIntermediaryJar().exists()) {//It may already exist if the merged jar is purely in Intermediary names
-					Files.copy(jarProvider.getMergedJar(), mapProvider.getIntermediaryJar().toPath());
-				} else {
-					assert jarProvider.getMergedJar().toFile().equals(mapProvider.getIntermediaryJar());
-				}
-				break interJar;
+		case LAST:
+			if (!mapProvider.getIntermediaryJar().exists()) {//It may already exist if the merged jar is purely in Intermediary names
+				Files.copy(jarProvider.getMergedJar(), mapProvider.getIntermediaryJar().toPath());
+			} else {
+				assert jarProvider.getMergedJar().toFile().equals(mapProvider.getIntermediaryJar());
+			}
+			fromM = null;
 
-			case INDIFFERENT:
-			default:
-				throw new IllegalStateException("Unexpected jar merge strategy " + jarProvider.getMergeStrategy());
+			if (transforms.containsKey("intermediary")) {//Won't be remapped to get the transformations applied, so will have to do them now
+				project.getLogger().info("Transforming intermediary jar");
+				doTheDeed(mapProvider.getIntermediaryJar(), mappingsProvider.getMappings(), "intermediary", transforms.get("intermediary"));
 			}
+			break;
 
-			mapJar(project.getLogger(), extension, mappingsProvider, jarProvider.getMergedJar(), classpath, mapProvider.getIntermediaryJar(), fromM, "intermediary");
+		case INDIFFERENT:
+		default:
+			throw new IllegalStateException("Unexpected jar merge strategy " + jarProvider.getMergeStrategy());
 		}
 
-		mapJar(project.getLogger(), extension, mappingsProvider, mapProvider.getIntermediaryJar().toPath(), classpath, mapProvider.getMappedJar(), "intermediary", "named");
-		CommandFixNesting.run(mapProvider.getMappedJar());
-
-		if (extension.shouldAddVersionIfNeeded() && !ZipUtil.containsEntry(mapProvider.getMappedJar(), "version.json")) addVersionJSON(mapProvider.getMappedJar(), jarProvider.minecraftVersion);
+		if (fromM == null) {
+			mapJar(project.getLogger(), extension, mappingsProvider, TinyRemapper.newRemapper(), mapProvider.getIntermediaryJar().toPath(), classpath, mapProvider.getMappedJar(), "intermediary", "named", transforms);
+		} else if (FUSED_REMAP) {
+			//Map straight from the merged jar to both at once, rather than waiting for the Intermediary jar to be written then reading it back in
+			TinyRemapper base = TinyRemapper.newRemapper().build();
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				base.readClassPath(classpath); //Both targets have the same classpath, so it only needs reading the once
+				TinyRemapper.Builder interRemapper = base.cloner();
+				TinyRemapper.Builder namedRemapper = base.cloner();
+
+				Future<?> interJar = executor.submit(() -> {
+					mapJar(project.getLogger(), extension, mappingsProvider, interRemapper, jarProvider.getMergedJar(), new Path[0], mapProvider.getIntermediaryJar(), fromM, "intermediary", transforms);
+					return null;
+				});
+				mapJar(project.getLogger(), extension, mappingsProvider, namedRemapper, jarProvider.getMergedJar(), new Path[0], mapProvider.getMappedJar(), fromM, "named", transforms);
+				interJar.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted remapping " + jarProvider.getMergedJar(), e);
+			} catch (ExecutionException e) {
+				Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+				Throwables.throwIfUnchecked(e.getCause());
+				throw new RuntimeException("Error remapping " + jarProvider.getMergedJar(), e.getCause());
+			} finally {
+				executor.shutdownNow();
+				base.finish();
+			}
+		} else {
+			mapJar(project.getLogger(), extension, mappingsProvider, TinyRemapper.newRemapper(), jarProvider.getMergedJar(), classpath, mapProvider.getIntermediaryJar(), fromM, "intermediary", transforms);
+			mapJar(project.getLogger(), extension, mappingsProvider, TinyRemapper.newRemapper(), mapProvider.getIntermediaryJar().toPath(), classpath, mapProvider.getMappedJar(), "intermediary", "named", transforms);
+		}
 	}
 
-	private static void mapJar(Logger logger, LoomGradleExtension extension, MappingsProvider mappingsProvider, Path input, Path[] classpath, File output, String fromM, String toM) throws IOException {
-		remapJar(logger, input, mappingsProvider.mcRemappingFactory.create(fromM, toM), extension.shouldBulldozeMappings(), classpath, output.toPath(), fromM, toM);
+	private static void mapJar(Logger logger, LoomGradleExtension extension, MappingsProvider mappingsProvider, TinyRemapper.Builder remapper, Path input, Path[] classpath, File output, String fromM, String toM,
+			Map<String, Map<String, Set<String>>> transforms) throws IOException {
+		Function<BiConsumer<String, byte[]>, RemapAT> atMaker;
+		if (transforms.containsKey(toM)) {
+			Set<String> classPool = mappingsProvider.getMappings().getClassEntries().parallelStream().map(entry -> entry.get(toM)).collect(Collectors.toSet());
+			atMaker = out -> AccessTransformerHelper.makeRemapATs(classPool, transforms.get(toM), WILDCARD, out);
+		} else {
+			atMaker = null;
+		}
+
+		remapJar(logger, remapper, input, mappingsProvider.mcRemappingFactory.create(fromM, toM), extension.shouldBulldozeMappings(), classpath, output.toPath(), fromM, toM, atMaker);
 	}
 
 	public static Path makeInterJar(Project project, LoomGradleExtension extension, MinecraftVersionAdaptable version, Optional<Path> intermediaryMappings) throws IOException {
@@ -164,89 +217,92 @@ public class MapJarsTiny {
 	}
 
 	public static void remapJar(Logger logger, Path originJar, Path intermediaryMappings, boolean bulldoze, Set<File> libraries, Path remappedJar, String originMappings) {
-		remapJar(logger, originJar,
+		remapJar(logger, TinyRemapper.newRemapper(), originJar,
 				TinyUtils.createTinyMappingProvider(intermediaryMappings, originMappings, "intermediary"),
-				bulldoze, libraries.stream().map(File::toPath).toArray(Path[]::new), remappedJar, originMappings, "intermediary");
+				bulldoze, libraries.stream().map(File::toPath).toArray(Path[]::new), remappedJar, originMappings, "intermediary", null);
 	}
 
-	private static void remapJar(Logger logger, Path input, IMappingProvider mappings, boolean bulldozeMappings, Path[] classpath, Path output, String fromM, String toM) {
+	private static void remapJar(Logger logger, TinyRemapper.Builder builder, Path input, IMappingProvider mappings, boolean bulldozeMappings, Path[] classpath, Path output, String fromM, String toM,
+			Function<BiConsumer<String, byte[]>, RemapAT> atMaker) {
 		logger.lifecycle(":Remapping minecraft (TinyRemapper, " + fromM + " -> " + toM + ')');
 
-		TinyRemapper remapper = TinyRemapper.newRemapper()
+		TinyRemapper remapper = builder
 				.withMappings(mappings)
 				.ignoreConflicts(bulldozeMappings)
 				.renameInvalidLocals(true)
 				.rebuildSourceFilenames(true)
 				.build();
 
+		RemapAT ats;
 		try (OutputConsumerPath outputConsumer = new OutputConsumerPath(output)) {
 			remapper.readClassPath(classpath);
 			remapper.readInputs(input);
-			remapper.apply(outputConsumer);
+			ats = atMaker != null ? atMaker.apply(outputConsumer) : null;
+			remapper.apply(ats != null ? ats : outputConsumer);
 			outputConsumer.addNonClassFiles(input, NonClassCopyMode.FIX_META_INF, remapper);
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to remap JAR " + input + " with mappings from " + mappings, e);
 		} finally {
 			remapper.finish();
 		}
-	}
 
-	public static void transform(Project project, Set<Pair<String, String>> ats, MinecraftMappedProvider jarProvider, MappingsProvider mappingProvider) throws IOException {
-		project.getLogger().info("Reading in mappings...");
-
-		Mappings mappings;
-		try (InputStream in = new FileInputStream(mappingProvider.MAPPINGS_TINY)) {
-			mappings = net.fabricmc.mappings.MappingsProvider.readTinyMappings(in, false);
+		if (ats != null) {
+			List<String> missed = ats.getMissed();
+			if (!missed.isEmpty()) throw new IllegalStateException("Finished transforming but missed " + missed);
 		}
+	}
 
-		project.getLogger().info("Read in " + mappings.getClassEntries().size() + " classes");
+	/** Work out the access transformations needed for both the Intermediary and named jars, keyed by the namespace of each */
+	private static Map<String, Map<String, Set<String>>> resolveATs(Project project, Set<Pair<String, String>> ats, Mappings mappings) {
+		MappingsLookup lookup = MappingsLookup.of(mappings);
 		project.getLogger().info("Working out what we have to do");
 
-		final String wildcard = "<*>"; //Special marker for the class itself rather than a method
 		Map<String, Set<String>> transforms = new HashMap<>();
 		Map<String, Set<String>> interTransforms = new HashMap<>();
 
 		Map<Boolean, Set<Pair<String, String>>> bits = ats.stream().collect(Collectors.partitioningBy(pair -> pair.getRight() != null, Collectors.toSet()));
 		Set<String> rawClasses = bits.get(Boolean.FALSE).stream().map(Pair::getLeft).collect(Collectors.toSet());
 
-		for (ClassEntry entry : mappings.getClassEntries()) {
-			String named = entry.get("named");
-			if (rawClasses.contains(named)) {
-				rawClasses.remove(named);
+		for (Iterator<String> it = rawClasses.iterator(); it.hasNext();) {
+			String named = it.next();
+			ClassEntry entry = lookup.getClass("named", named);
+
+			if (entry != null) {
+				it.remove();
 
 				String inter = entry.get("intermediary");
 				if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
-				transforms.computeIfAbsent(named, k -> new HashSet<>()).add(wildcard);
-				interTransforms.computeIfAbsent(inter, k -> new HashSet<>()).add(wildcard);
+				transforms.computeIfAbsent(named, k -> new HashSet<>()).add(WILDCARD);
+				interTransforms.computeIfAbsent(inter, k -> new HashSet<>()).add(WILDCARD);
 			}
 		}
 
 		Map<String, Set<String>> methods = bits.get(Boolean.TRUE).stream().collect(Collectors.groupingBy(Pair::getLeft, Collectors.mapping(Pair::getRight, Collectors.toSet())));
-		for (MethodEntry entry : mappings.getMethodEntries()) {
-			EntryTriple named = entry.get("named");
-			Set<String> targets = methods.get(named.getOwner());
+		for (Iterator<Entry<String, Set<String>>> it = methods.entrySet().iterator(); it.hasNext();) {
+			Entry<String, Set<String>> owner = it.next();
+			Set<String> targets = owner.getValue();
 
-			if (targets != null && targets.contains(named.getName() + named.getDesc())) {
-				EntryTriple inter = entry.get("intermediary");
-				if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
-				transforms.computeIfAbsent(named.getOwner(), k -> new HashSet<>()).add(named.getName() + named.getDesc());
-				interTransforms.computeIfAbsent(inter.getOwner(), k -> new HashSet<>()).add(inter.getName() + inter.getDesc());
+			for (MethodEntry entry : lookup.getMethods("named", owner.getKey())) {
+				EntryTriple named = entry.get("named");
 
-				targets.remove(named.getName() + named.getDesc());
-				if (targets.isEmpty()) methods.remove(named.getOwner());
+				if (targets.contains(named.getName() + named.getDesc())) {
+					EntryTriple inter = entry.get("intermediary");
+					if (inter == null) throw new IllegalStateException("Missing intermediary name for " + named);
+					transforms.computeIfAbsent(named.getOwner(), k -> new HashSet<>()).add(named.getName() + named.getDesc());
+					interTransforms.computeIfAbsent(inter.getOwner(), k -> new HashSet<>()).add(inter.getName() + inter.getDesc());
+
+					targets.remove(named.getName() + named.getDesc());
+				}
 			}
+
+			if (targets.isEmpty()) it.remove();
 		}
 
 		if (!methods.isEmpty()) {
 			List<String> resolved = new ArrayList<>();
 			UnaryOperator<String> remapper = name -> {
-				for (ClassEntry classEntry : mappings.getClassEntries()) {
-					if (name.equals(classEntry.get("named"))) {
-						return classEntry.get("intermediary");
-					}
-				}
-
-				return name;
+				String inter = lookup.mapClass(name, "named", "intermediary");
+				return inter != null ? inter : name;
 			};
 
 			for (Entry<String, Set<String>> entry : methods.entrySet()) {
@@ -285,39 +341,29 @@ public class MapJarsTiny {
 			throw new InvalidUserDataException("Invalid lines found within access transformer");
 		}
 		project.getLogger().info("Found " + transforms.size() + " classes that need tinkering with");
-		project.getLogger().lifecycle(":transforming minecraft");
 
-		project.getLogger().info("Transforming intermediary jar");
-		doTheDeed(jarProvider.MINECRAFT_INTERMEDIARY_JAR, mappings, "intermediary", interTransforms, wildcard);
-		project.getLogger().info("Transforming named jar");
-		doTheDeed(jarProvider.MINECRAFT_MAPPED_JAR, mappings, "named", transforms, wildcard);
-		project.getLogger().info("Transformation complete"); //Probably, successful is another matter
+		Map<String, Map<String, Set<String>>> out = new HashMap<>();
+		out.put("intermediary", interTransforms);
+		out.put("named", transforms);
+		return out;
 	}
 
-	private static void doTheDeed(File jar, Mappings mappings, String type, Map<String, Set<String>> transforms, String wildcard) throws IOException {
+	private static void doTheDeed(File jar, Mappings mappings, String type, Map<String, Set<String>> transforms) throws IOException {
 		Set<String> classPool = mappings.getClassEntries().parallelStream().map(entry -> entry.get(type)).collect(Collectors.toSet());
-		ZipEntryAT[] transformers = AccessTransformerHelper.makeZipATs(classPool, transforms, wildcard);
-
-		ZipUtil.transformEntries(jar, transformers);
+		List<String> missed = AccessTransformerHelper.transformJar(jar, classPool, transforms, WILDCARD);
 
-		if (!Arrays.stream(transformers).allMatch(ZipEntryAT::didTransform)) {
-			List<String> missed = new ArrayList<>();
-			for (ZipEntryAT transformer : transformers) {
-				if (!transformer.didTransform()) {
-					String name = transformer.getPath();
-					missed.add(name.substring(0, name.length() - ".class".length()));
-				}
-			}
+		if (!missed.isEmpty()) {
 			throw new IllegalStateException("Finished transforming but missed " + missed);
 		}
 	}
 
-	private static void addVersionJSON(File jar, String version) {
+	/** Make the contents of a {@code version.json} for the given Minecraft version, for versions which don't come with one */
+	public static byte[] makeVersionJSON(String version) {
 		//Add the minimum needed for Fabric Loader's McVersionLookup to infer a semver version
 		//Included from every version since 18w47b, but never before that
-		ZipUtil.addEntry(jar, "version.json", String.join("\n", "{",
+		return String.join("\n", "{",
 				"	\"id\": \"" + version + "\",",
 				"	\"release_target\": \"" + version + '"',
-				"}").getBytes(StandardCharsets.UTF_8));
+				"}").getBytes(StandardCharsets.UTF_8);
 	}
 }
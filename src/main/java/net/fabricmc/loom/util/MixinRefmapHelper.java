@@ -27,10 +27,11 @@ package net.fabricmc.loom.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.ZipEntry;
 
+import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
@@ -39,40 +40,39 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
 import org.zeroturnaround.zip.ZipUtil;
-import org.zeroturnaround.zip.transform.StringZipEntryTransformer;
-import org.zeroturnaround.zip.transform.ZipEntryTransformerEntry;
+
+import net.fabricmc.loom.util.ParallelZipTransformer.EntryTransformer;
 
 public final class MixinRefmapHelper {
 	private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
 	private MixinRefmapHelper() { }
 
-	public static boolean addRefmapName(String filename, String mixinVersion, File output) {
+	public static boolean addRefmapName(String filename, String mixinVersion, File output) throws IOException {
 		Set<String> mixinFilenames = findMixins(output);
 
 		if (mixinFilenames.size() > 0) {
-			return ZipUtil.transformEntries(output, mixinFilenames.stream().map((f) -> new ZipEntryTransformerEntry(f, new StringZipEntryTransformer("UTF-8") {
-				@Override
-				protected String transform(ZipEntry zipEntry, String input) throws IOException {
-					try {
-						JsonObject json = GSON.fromJson(input, JsonObject.class);
-
-						if (!json.has("refmap")) {
-							json.addProperty("refmap", filename);
-						}
+			EntryTransformer transformer = (name, data) -> {
+				try {
+					JsonObject json = GSON.fromJson(new String(data, StandardCharsets.UTF_8), JsonObject.class);
 
-						if (!json.has("minVersion") && mixinVersion != null) {
-							json.addProperty("minVersion", mixinVersion);
-						}
+					if (!json.has("refmap")) {
+						json.addProperty("refmap", filename);
+					}
 
-						return GSON.toJson(json);
-					} catch (JsonSyntaxException e) {
-						System.err.println("Suspected Mixin config " + zipEntry + " is not a JSON object");
-						e.printStackTrace();
-						return input;
+					if (!json.has("minVersion") && mixinVersion != null) {
+						json.addProperty("minVersion", mixinVersion);
 					}
+
+					return GSON.toJson(json).getBytes(StandardCharsets.UTF_8);
+				} catch (JsonSyntaxException e) {
+					System.err.println("Suspected Mixin config " + name + " is not a JSON object");
+					e.printStackTrace();
+					return data;
 				}
-			})).toArray(ZipEntryTransformerEntry[]::new));
+			};
+
+			return ParallelZipTransformer.transformEntries(output, Maps.asMap(mixinFilenames, name -> transformer));
 		} else {
 			return false;
 		}
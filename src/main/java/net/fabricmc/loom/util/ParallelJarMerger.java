@@ -0,0 +1,163 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.base.Throwables;
+
+import org.apache.commons.io.IOUtils;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import net.fabricmc.stitch.merge.ClassMerger;
+import net.fabricmc.stitch.merge.SyntheticParameterClassVisitor;
+
+/**
+ * Merges a client and server jar into one, as Stitch's {@link net.fabricmc.stitch.merge.JarMerger JarMerger} does, but with the entries
+ * split across a {@link ForkJoinPool} rather than merged one at a time. The merged jar is always written out in entry name order,
+ * so the same inputs will always produce the same jar regardless of how the work gets split up.
+ */
+public final class ParallelJarMerger {
+	private static final class Entry {
+		public final long time;
+		public final byte[] data;
+
+		Entry(long time, byte[] data) {
+			this.time = time;
+			this.data = data;
+		}
+	}
+	private static final ClassMerger CLASS_MERGER = new ClassMerger();
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	private ParallelJarMerger() {
+	}
+
+	private static Map<String, Entry> read(File jar) throws IOException {
+		Map<String, Entry> out = new HashMap<>();
+
+		try (ZipFile zip = new ZipFile(jar)) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				String name = entry.getName();
+				if (entry.isDirectory()) continue;
+
+				if (MANIFEST.equals(name)) {
+					out.put(name, new Entry(entry.getTime(), "Manifest-Version: 1.0\nMain-Class: net.minecraft.client.Main\n".getBytes(StandardCharsets.UTF_8)));
+				} else if (!name.startsWith("META-INF/") || !name.endsWith(".SF") && !name.endsWith(".RSA")) {//Signatures won't be valid once merged
+					try (InputStream in = zip.getInputStream(entry)) {
+						out.put(name, new Entry(entry.getTime(), IOUtils.toByteArray(in)));
+					}
+				}
+			}
+		}
+
+		return out;
+	}
+
+	/** Merge the given client and server jars into the given destination, optionally offsetting synthetic parameters as {@link net.fabricmc.stitch.merge.JarMerger#enableSyntheticParamsOffset()} does */
+	public static void merge(File client, File server, File to, boolean offsetSyntheticParams) throws IOException {
+		Map<String, Entry> clientEntries, serverEntries;
+
+		ForkJoinTask<Map<String, Entry>> serverRead = ForkJoinPool.commonPool().submit(() -> read(server));
+		try {
+			clientEntries = read(client);
+			serverEntries = serverRead.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading " + server, e);
+		} catch (ExecutionException e) {
+			Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+			Throwables.throwIfUnchecked(e.getCause());
+			throw new RuntimeException("Error reading " + server, e.getCause());
+		} finally {
+			serverRead.cancel(false);
+		}
+
+		NavigableSet<String> names = new TreeSet<>(clientEntries.keySet());
+		names.addAll(serverEntries.keySet());
+
+		//Ordered stream, so the entries come back out in name order however they're split up
+		List<Map.Entry<String, Entry>> merged = names.parallelStream().map(name -> {
+			Entry merge = merge(name, clientEntries.get(name), serverEntries.get(name), offsetSyntheticParams);
+			return merge != null ? new SimpleImmutableEntry<>(name, merge) : null;
+		}).filter(Objects::nonNull).collect(Collectors.toList());
+
+		try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(to.toPath())))) {
+			for (Map.Entry<String, Entry> entry : merged) {
+				ZipEntry zipEntry = new ZipEntry(entry.getKey());
+				zipEntry.setTime(entry.getValue().time);
+				out.putNextEntry(zipEntry);
+				out.write(entry.getValue().data);
+				out.closeEntry();
+			}
+		}
+	}
+
+	private static Entry merge(String name, Entry client, Entry server, boolean offsetSyntheticParams) {
+		boolean isClass = name.endsWith(".class");
+		boolean isMinecraft = client != null || name.startsWith("net/minecraft") || name.indexOf('/') < 0;
+
+		Entry result;
+		String side;
+		if (client != null && server != null) {
+			side = null;
+
+			if (isClass && !Arrays.equals(client.data, server.data)) {
+				result = new Entry(client.time, CLASS_MERGER.merge(client.data, server.data));
+			} else {
+				result = client;
+			}
+		} else if (client != null) {
+			result = client;
+			side = "CLIENT";
+		} else {
+			//The server bundles its libraries whilst the client doesn't, so they can be skipped
+			if (isClass && !isMinecraft) return null;
+
+			result = server;
+			side = "SERVER";
+		}
+
+		if (isClass && isMinecraft && (side != null || offsetSyntheticParams)) {
+			ClassWriter writer = new ClassWriter(0);
+			ClassVisitor visitor = writer;
+			if (side != null) visitor = new ClassMerger.SidedClassVisitor(Opcodes.ASM9, visitor, side);
+			if (offsetSyntheticParams) visitor = new SyntheticParameterClassVisitor(Opcodes.ASM9, visitor);
+
+			new ClassReader(result.data).accept(visitor, 0);
+			result = new Entry(result.time, writer.toByteArray());
+		}
+
+		return result;
+	}
+}
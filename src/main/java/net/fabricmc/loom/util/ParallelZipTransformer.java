@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.base.Throwables;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Transforms the entries of a jar across a {@link ForkJoinPool}, rather than one at a time as {@link org.zeroturnaround.zip.ZipUtil#transformEntries} does.
+ * The entries are written back in their original order with their original timestamps, whether they were transformed or not.
+ */
+public final class ParallelZipTransformer {
+	/** Transforms the contents of a single entry */
+	@FunctionalInterface
+	public interface EntryTransformer {
+		byte[] transform(String name, byte[] data) throws IOException;
+	}
+
+	private ParallelZipTransformer() {
+	}
+
+	/** Transform the given jar in place, returning whether any of the entries were transformed */
+	public static boolean transformEntries(File jar, Map<String, ? extends EntryTransformer> transformers) throws IOException {
+		return transformEntries(jar, transformers::get, Collections.emptyMap());
+	}
+
+	/**
+	 * Transform the given jar in place using whichever transformer is given for each entry (or {@code null} to leave it as is),
+	 * adding any of the given additional entries the jar doesn't already have. Returns whether the jar was changed.
+	 */
+	public static boolean transformEntries(File jar, Function<String, ? extends EntryTransformer> transformers, Map<String, byte[]> additions) throws IOException {
+		Path temp = Files.createTempFile(jar.toPath().toAbsolutePath().getParent(), jar.getName(), ".tmp");
+
+		try {
+			if (!transformEntries(jar, transformers, additions, temp.toFile())) return false;
+			Files.move(temp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/** Transform the given jar into the given destination, returning whether any of the entries were transformed */
+	public static boolean transformEntries(File from, Map<String, ? extends EntryTransformer> transformers, File to) throws IOException {
+		return transformEntries(from, transformers::get, Collections.emptyMap(), to);
+	}
+
+	/**
+	 * Transform the given jar into the given destination using whichever transformer is given for each entry (or {@code null} to copy it as is),
+	 * adding any of the given additional entries the jar doesn't already have. Returns whether the destination differs from the original jar.
+	 */
+	public static boolean transformEntries(File from, Function<String, ? extends EntryTransformer> transformers, Map<String, byte[]> additions, File to) throws IOException {
+		try (ZipFile zip = new ZipFile(from)) {
+			List<? extends ZipEntry> entries = Collections.list(zip.entries());
+			List<Future<byte[]>> results = new ArrayList<>(entries.size());
+			boolean transformed = false;
+
+			for (ZipEntry entry : entries) {
+				EntryTransformer transformer = !entry.isDirectory() ? transformers.apply(entry.getName()) : null;
+
+				if (transformer != null) {
+					results.add(ForkJoinPool.commonPool().submit(() -> {
+						byte[] data;
+						try (InputStream in = zip.getInputStream(entry)) {
+							data = IOUtils.toByteArray(in);
+						}
+						return transformer.transform(entry.getName(), data);
+					}));
+					transformed = true;
+				} else {
+					results.add(null);
+				}
+			}
+
+			Map<String, byte[]> missing = new LinkedHashMap<>(additions);
+			for (ZipEntry entry : entries) {
+				missing.remove(entry.getName());
+			}
+			if (!missing.isEmpty()) transformed = true;
+
+			try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(to.toPath())))) {
+				for (int i = 0, end = entries.size(); i < end; i++) {
+					ZipEntry entry = entries.get(i);
+					Future<byte[]> result = results.get(i);
+
+					ZipEntry copy = new ZipEntry(entry.getName());
+					copy.setTime(entry.getTime());
+					if (entry.getComment() != null) copy.setComment(entry.getComment());
+					if (entry.getExtra() != null) copy.setExtra(entry.getExtra());
+					out.putNextEntry(copy);
+
+					if (result == null) {
+						try (InputStream in = zip.getInputStream(entry)) {
+							IOUtils.copy(in, out);
+						}
+					} else {
+						try {
+							out.write(result.get());
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException("Interrupted transforming " + entry.getName() + " in " + from, e);
+						} catch (ExecutionException e) {
+							Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+							Throwables.throwIfUnchecked(e.getCause());
+							throw new RuntimeException("Error transforming " + entry.getName() + " in " + from, e.getCause());
+						}
+					}
+
+					out.closeEntry();
+				}
+
+				for (Entry<String, byte[]> entry : missing.entrySet()) {
+					out.putNextEntry(new ZipEntry(entry.getKey()));
+					out.write(entry.getValue());
+					out.closeEntry();
+				}
+			} finally {
+				for (Future<byte[]> result : results) {
+					if (result != null) result.cancel(false);
+				}
+			}
+
+			return transformed;
+		}
+	}
+}
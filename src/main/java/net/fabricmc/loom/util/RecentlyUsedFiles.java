@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a directory of cached files to a size by removing the least recently used first, using each file's modification time
+ * to record when it was last used (as access times are often not kept up to date).
+ */
+public final class RecentlyUsedFiles {
+	/** How long a file which isn't one of the cached files can be left before it is assumed to have been abandoned part way through being written */
+	private static final long ABANDONED = TimeUnit.HOURS.toMillis(1);
+
+	private RecentlyUsedFiles() {
+	}
+
+	/** Mark the given file as having just been used */
+	public static void touch(Path file) {
+		try {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			//Only means it might get trimmed sooner than it ought to
+		}
+	}
+
+	/**
+	 * Remove the least recently used files ending with the given suffix from the given directory until those left take up no more than the given
+	 * number of bytes, along with anything else in the directory which hasn't been touched for a while, returning how many files were removed
+	 */
+	public static int trim(Path directory, String suffix, long maxSize) throws IOException {
+		if (Files.notExists(directory)) return 0;
+
+		Map<Path, BasicFileAttributes> files = new HashMap<>();
+		long abandoned = System.currentTimeMillis() - ABANDONED;
+		int removed = 0;
+
+		try (Stream<Path> contents = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) contents::iterator) {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				if (!attributes.isRegularFile()) continue;
+
+				if (file.getFileName().toString().endsWith(suffix)) {
+					files.put(file, attributes);
+				} else if (attributes.lastModifiedTime().toMillis() < abandoned && Files.deleteIfExists(file)) {//Could be from an older version, or a temporary file which never got moved
+					removed++;
+				}
+			}
+		}
+
+		long size = files.values().stream().mapToLong(BasicFileAttributes::size).sum();
+		if (size <= maxSize) return removed;
+
+		List<Path> oldest = files.entrySet().stream().sorted(Comparator.comparing(entry -> entry.getValue().lastModifiedTime())).map(Entry::getKey).collect(Collectors.toList());
+		for (Path file : oldest) {
+			if (size <= maxSize) break;
+
+			if (Files.deleteIfExists(file)) removed++;
+			size -= files.get(file).size();
+		}
+
+		return removed;
+	}
+}
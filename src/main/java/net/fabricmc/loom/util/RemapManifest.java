@@ -0,0 +1,196 @@
+/*
+ * Copyright 2021 Chocohead
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package net.fabricmc.loom.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.apache.commons.io.IOUtils;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Records what went into remapping a jar: a key for everything outside of the jar (mappings, classpath and so on), then a hash of each entry
+ * in the jar along with a hash of the parts of each class which can change how other classes are remapped (its hierarchy and member declarations).
+ *
+ * <p>Comparing the manifest of a new jar against the previous one shows whether only the bodies of some classes changed,
+ * in which case only those classes need remapping again, or whether everything has to be.
+ */
+public final class RemapManifest {
+	private static final String HEADER = "remap-manifest v1";
+	private final String key;
+	private final boolean flag;
+	private final Map<String, String> contents;
+	private final Map<String, String> structures;
+
+	private RemapManifest(String key, boolean flag, Map<String, String> contents, Map<String, String> structures) {
+		this.key = key;
+		this.flag = flag;
+		this.contents = contents;
+		this.structures = structures;
+	}
+
+	/** Make the manifest for the given jar, using the given key for everything else which affects how it is remapped */
+	public static RemapManifest of(Path jar, String key) throws IOException {
+		Map<String, String> contents = new TreeMap<>();
+		Map<String, String> structures = new TreeMap<>();
+
+		try (ZipFile zip = new ZipFile(jar.toFile())) {
+			for (ZipEntry entry : Collections.list(zip.entries())) {
+				if (entry.isDirectory()) continue;
+
+				byte[] data;
+				try (InputStream in = zip.getInputStream(entry)) {
+					data = IOUtils.toByteArray(in);
+				}
+
+				contents.put(entry.getName(), Hashing.murmur3_128().hashBytes(data).toString());
+				if (entry.getName().endsWith(".class")) structures.put(entry.getName(), structureHash(data));
+			}
+		}
+
+		return new RemapManifest(key, false, contents, structures);
+	}
+
+	/** Hash everything about the given class which could change how another class is remapped */
+	private static String structureHash(byte[] data) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+
+		new ClassReader(data).accept(new ClassVisitor(Opcodes.ASM9) {
+			private void put(Object... values) {
+				for (Object value : values) {
+					String text = Objects.toString(value);
+					hasher.putInt(text.length()).putString(text, StandardCharsets.UTF_8);
+				}
+			}
+
+			@Override
+			public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+				put("class", access, name, superName);
+				if (interfaces != null) put((Object[]) interfaces);
+			}
+
+			@Override
+			public void visitInnerClass(String name, String outerName, String innerName, int access) {
+				put("inner", name, outerName, innerName, access);
+			}
+
+			@Override
+			public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+				put("field", access, name, descriptor);
+				return null;
+			}
+
+			@Override
+			public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+				put("method", access, name, descriptor);
+				return null;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+		return hasher.hash().toString();
+	}
+
+	/** Make a copy of this manifest with the given flag, for remembering anything about the remap which isn't visible from the remapped jar */
+	public RemapManifest withFlag(boolean flag) {
+		return new RemapManifest(key, flag, contents, structures);
+	}
+
+	public boolean getFlag() {
+		return flag;
+	}
+
+	/** Read the manifest written to the given file, or {@code null} if there isn't one (or it can't be read) */
+	public static RemapManifest read(Path file) throws IOException {
+		if (Files.notExists(file)) return null;
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) return null;
+
+			String key = reader.readLine();
+			String flag = reader.readLine();
+			if (key == null || flag == null) return null;
+
+			Map<String, String> contents = new TreeMap<>();
+			Map<String, String> structures = new TreeMap<>();
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] parts = line.split("\t");
+				if (parts.length < 2) return null;
+
+				contents.put(parts[0], parts[1]);
+				if (parts.length > 2) structures.put(parts[0], parts[2]);
+			}
+
+			return new RemapManifest(key, Boolean.parseBoolean(flag), contents, structures);
+		}
+	}
+
+	public void write(Path file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.write(key);
+			writer.newLine();
+			writer.write(Boolean.toString(flag));
+			writer.newLine();
+
+			for (Entry<String, String> entry : contents.entrySet()) {
+				writer.write(entry.getKey());
+				writer.write('\t');
+				writer.write(entry.getValue());
+
+				String structure = structures.get(entry.getKey());
+				if (structure != null) {
+					writer.write('\t');
+					writer.write(structure);
+				}
+
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Find the classes which need remapping again to go from the previous manifest to this one, or {@code null} if everything does.
+	 * Only classes whose bodies changed can be remapped on their own, anything else changing means the whole jar has to be.
+	 */
+	public Set<String> findChangedClasses(RemapManifest previous) {
+		if (previous == null || !key.equals(previous.key) || !contents.keySet().equals(previous.contents.keySet()) || !structures.equals(previous.structures)) return null;
+
+		Set<String> out = new HashSet<>();
+		for (Entry<String, String> entry : contents.entrySet()) {
+			if (entry.getValue().equals(previous.contents.get(entry.getKey()))) continue;
+			if (!structures.containsKey(entry.getKey())) return null; //Resources don't get remapped, but can change how things are processed after
+
+			out.add(entry.getKey());
+		}
+
+		return out;
+	}
+}
@@ -55,17 +55,25 @@ public final class StaticPathWatcher {
 	private void pollChanges() {
 		WatchKey key;
 		while ((key = service.poll()) != null) {
+			Path parent = (Path) key.watchable();
+
 			for (WatchEvent<?> event : key.pollEvents()) {
 				Object ctx = event.context();
 
-				if (ctx instanceof Path) {
-					changeCache.add(((Path) ctx).toAbsolutePath());
+				if (ctx instanceof Path) {//The context is relative to the watched directory rather than the working one
+					changeCache.add(parent.resolve((Path) ctx).toAbsolutePath());
+				} else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					pathsObserved.remove(parent); //Lost track of what changed, so everything in the directory will need checking
 				}
 			}
+
+			if (!key.reset()) {//Stops being signalled until it is reset
+				pathsObserved.remove(parent);
+			}
 		}
 	}
 
-	public boolean hasFileChanged(Path filePath) {
+	public synchronized boolean hasFileChanged(Path filePath) {
 		if (!Files.exists(filePath)) {
 			return true;
 		}
@@ -92,7 +100,7 @@ public final class StaticPathWatcher {
 		}
 	}
 
-	public void resetFile(Path file) {
+	public synchronized void resetFile(Path file) {
 		pollChanges();
 
 		changeCache.remove(file.toAbsolutePath());
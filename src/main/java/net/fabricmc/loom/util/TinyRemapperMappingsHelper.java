@@ -24,7 +24,14 @@
 
 package net.fabricmc.loom.util;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import net.fabricmc.loom.LoomGradleExtension;
 import net.fabricmc.mappings.ClassEntry;
@@ -40,24 +47,58 @@ public class TinyRemapperMappingsHelper {
 		String suggestLocalName(String type, boolean plural);
 	}
 
+	/** The class, field and method maps Tiny Remapper wants for remapping between two namespaces of a set of mappings */
+	public static final class RemapTables {
+		public final Map<String, String> classes, fields, methods;
+
+		RemapTables(Map<String, String> classes, Map<String, String> fields, Map<String, String> methods) {
+			this.classes = Collections.unmodifiableMap(classes);
+			this.fields = Collections.unmodifiableMap(fields);
+			this.methods = Collections.unmodifiableMap(methods);
+		}
+
+		static RemapTables build(Mappings mappings, String from, String to) {
+			Map<String, String> classes = new HashMap<>(mappings.getClassEntries().size() * 4 / 3 + 1);
+			for (ClassEntry entry : mappings.getClassEntries()) {
+				classes.put(entry.get(from), entry.get(to));
+			}
+
+			Map<String, String> fields = new HashMap<>(mappings.getFieldEntries().size() * 4 / 3 + 1);
+			for (FieldEntry entry : mappings.getFieldEntries()) {
+				add(entry, from, to, fields);
+			}
+
+			Map<String, String> methods = new HashMap<>(mappings.getMethodEntries().size() * 4 / 3 + 1);
+			for (MethodEntry entry : mappings.getMethodEntries()) {
+				EntryTriple fromTriple = entry.get(from);
+				methods.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
+			}
+
+			return new RemapTables(classes, fields, methods);
+		}
+
+		public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
+			classMap.putAll(classes);
+			fieldMap.putAll(fields);
+			methodMap.putAll(methods);
+		}
+	}
+
+	/** The tables already built for each set of mappings, held weakly so they go when the mappings do (such as {@link net.fabricmc.loom.providers.MappingsCache} dropping them) */
+	private static final Cache<Mappings, ConcurrentMap<String, RemapTables>> TABLES = CacheBuilder.newBuilder().weakKeys().build();
+
 	private TinyRemapperMappingsHelper() { }
 
+	/** Get the tables for remapping the given mappings from one namespace to another, only building them if they've not been asked for before */
+	public static RemapTables getTables(Mappings mappings, String from, String to) {
+		return TABLES.asMap().computeIfAbsent(mappings, k -> new ConcurrentHashMap<>()).computeIfAbsent(from + '\0' + to, k -> RemapTables.build(mappings, from, to));
+	}
+
 	public static IMappingProvider create(LoomGradleExtension extension, Mappings mappings, String from, String to) {
 		return new IMappingProvider() {
 			@Override
 			public void load(Map<String, String> classMap, Map<String, String> fieldMap, Map<String, String> methodMap) {
-				for (ClassEntry entry : mappings.getClassEntries()) {
-					classMap.put(entry.get(from), entry.get(to));
-				}
-
-				for (FieldEntry entry : mappings.getFieldEntries()) {
-					add(entry, from, to, fieldMap);
-				}
-
-				for (MethodEntry entry : mappings.getMethodEntries()) {
-					EntryTriple fromTriple = entry.get(from);
-					methodMap.put(fromTriple.getOwner() + '/' + MemberInstance.getMethodId(fromTriple.getName(), fromTriple.getDesc()), entry.get(to).getName());
-				}
+				getTables(mappings, from, to).load(classMap, fieldMap, methodMap);
 			}
 
 			@Override
@@ -72,6 +113,11 @@ public class TinyRemapperMappingsHelper {
 		};
 	}
 
+	/** As {@link #create(LoomGradleExtension, Mappings, String, String)} but without any project's local name suggestors, so it can be shared between projects */
+	public static IMappingProvider create(Mappings mappings, String from, String to) {
+		return (classMap, fieldMap, methodMap) -> getTables(mappings, from, to).load(classMap, fieldMap, methodMap);
+	}
+
 	public static void add(FieldEntry field, String from, String to, Map<String, String> fields) {
 		EntryTriple fromTriple = field.get(from);
 		fields.put(fromTriple.getOwner() + '/' + MemberInstance.getFieldId(fromTriple.getName(), fromTriple.getDesc(), false), field.get(to).getName());